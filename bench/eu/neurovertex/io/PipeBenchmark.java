@@ -0,0 +1,118 @@
+package eu.neurovertex.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Pushes data from one thread to another through {@link PipeInputStream} and {@link RingPipeInputStream}, with
+ * several write sizes, and reports throughput of each. Then sends lines one at a time without flushing, as the bot's
+ * commands are written to the server's stdin, and reports how long each takes to reach the reader.
+ * <p>
+ * Usage : PipeBenchmark [megabytes (default 256)] [pipe size (default 1048576)]
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:40
+ */
+public class PipeBenchmark {
+	private static final int[] CHUNKS = {1, 80, 8192};
+	private static final int LINES = 200;
+
+	public static void main(String[] args) throws Exception {
+		long total = (args.length > 0 ? Long.parseLong(args[0]) : 256) << 20;
+		int pipeSize = args.length > 1 ? Integer.parseInt(args[1]) : 1048576;
+		// Warm up both implementations, then measure
+		for (boolean report : new boolean[]{false, true}) {
+			for (int chunk : CHUNKS) {
+				// Single byte writes are much slower, keep their run short
+				long bytes = (report ? total : total / 8) / (chunk == 1 ? 16 : 1);
+				PipeInputStream oldIn = new PipeInputStream(pipeSize);
+				double old = run(oldIn, new PipeOutputStream(oldIn), chunk, bytes);
+				RingPipeInputStream ringIn = new RingPipeInputStream(pipeSize);
+				double ring = run(ringIn, new RingPipeOutputStream(ringIn), chunk, bytes);
+				if (report)
+					System.out.printf("%5d byte writes : PipeInputStream %8.1f MB/s, RingPipeInputStream %8.1f MB/s%n", chunk, old, ring);
+			}
+		}
+		PipeInputStream oldIn = new PipeInputStream(pipeSize);
+		long[] old = latency(oldIn, new PipeOutputStream(oldIn), LINES);
+		RingPipeInputStream ringIn = new RingPipeInputStream(pipeSize);
+		long[] ring = latency(ringIn, new RingPipeOutputStream(ringIn), LINES);
+		System.out.printf("Line latency : PipeInputStream p50 %dus, p99 %dus, RingPipeInputStream p50 %dus, p99 %dus%n",
+				old[LINES / 2] / 1000, old[LINES * 99 / 100] / 1000, ring[LINES / 2] / 1000, ring[LINES * 99 / 100] / 1000);
+	}
+
+	/**
+	 * @return	Throughput, in MB/s
+	 */
+	private static double run(InputStream in, final OutputStream out, final int chunk, final long bytes) throws Exception {
+		final IOException[] error = new IOException[1];
+		Thread writer = new Thread("Pipe Benchmark Writer") {
+			@Override
+			public void run() {
+				byte[] data = new byte[chunk];
+				try {
+					for (long sent = 0; sent < bytes; sent += chunk) {
+						if (chunk == 1)
+							out.write((int) sent);
+						else
+							out.write(data, 0, (int) Math.min(chunk, bytes - sent));
+					}
+					out.close();
+				} catch (IOException e) {
+					error[0] = e;
+				}
+			}
+		};
+		byte[] buffer = new byte[8192];
+		long start = System.nanoTime(), received = 0;
+		writer.start();
+		for (int n; (n = in.read(buffer, 0, buffer.length)) != -1; )
+			received += n;
+		long time = System.nanoTime() - start;
+		writer.join();
+		if (error[0] != null)
+			throw error[0];
+		if (received != bytes)
+			throw new IllegalStateException("Received " + received + " bytes out of " + bytes);
+		return received / 1048576. / (time / 1e9);
+	}
+
+	/**
+	 * Writes lines with a pause in between, so that the reader has to wait for each of them.
+	 * @return	Sorted delivery times, in nanoseconds
+	 */
+	private static long[] latency(InputStream in, final OutputStream out, final int lines) throws Exception {
+		final long[] sent = new long[lines];
+		Thread writer = new Thread("Pipe Benchmark Writer") {
+			@Override
+			public void run() {
+				byte[] line = new byte[80];
+				line[79] = '\n';
+				try {
+					for (int i = 0; i < lines; i++) {
+						Thread.sleep(1);
+						sent[i] = System.nanoTime();
+						out.write(line);
+					}
+					out.close();
+				} catch (IOException | InterruptedException ignored) {
+				}
+			}
+		};
+		long[] times = new long[lines];
+		byte[] buffer = new byte[80];
+		writer.start();
+		for (int i = 0; i < lines; i++) {
+			for (int n = 0; n < buffer.length; )
+				n += in.read(buffer, n, buffer.length - n);
+			times[i] = System.nanoTime();
+		}
+		writer.join();
+		for (int i = 0; i < lines; i++)
+			times[i] -= sent[i];
+		Arrays.sort(times);
+		return times;
+	}
+}
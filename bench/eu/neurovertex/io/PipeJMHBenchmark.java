@@ -0,0 +1,158 @@
+package eu.neurovertex.io;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * JMH benchmarks of the pipes between the server and XMPPCraft : {@link PipeInputStream}, the JDK's
+ * {@link PipedInputStream} it was derived from, and {@link RingPipeInputStream}. Each pipe is drained by a background
+ * thread, so that the measured threads are the writers, as the server's threads are.
+ * <ul>
+ *     <li>singleByte : one byte per write, what PrintStream produces for print(char)</li>
+ *     <li>line : one line-sized write, what println produces</li>
+ *     <li>twoWriters : two threads writing lines to the same pipe, as the console and the bot do to stdin</li>
+ *     <li>slowReader : line writes to a pipe whose reader pauses between reads, so that it is mostly full</li>
+ *     <li>lineLatency : time for an unflushed line to reach the reader. Shows the 1 second wait() polling of the old
+ *     pipes.</li>
+ * </ul>
+ * Requires JMH (jmh-core and jmh-generator-annprocess) on the classpath. For allocation rates, run with the GC profiler :
+ * <pre>
+ *     java -cp &lt;classes&gt;:&lt;jmh&gt; org.openjdk.jmh.Main PipeJMHBenchmark -prof gc
+ * </pre>
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:45
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipeJMHBenchmark {
+	private static final int PIPE_SIZE = 1048576;
+	private static final byte[] LINE = ("[12:34:56] [Server thread/INFO]: <Notch> a chat line of a fairly usual length, "
+			+ "ending here\n").getBytes();
+
+	@Benchmark
+	public void singleByte(FastReader pipe) throws IOException {
+		pipe.out.write('x');
+	}
+
+	@Benchmark
+	public void line(FastReader pipe) throws IOException {
+		pipe.out.write(LINE);
+	}
+
+	@Benchmark
+	@Threads(2)
+	public void twoWriters(FastReader pipe) throws IOException {
+		pipe.out.write(LINE);
+	}
+
+	@Benchmark
+	public void slowReader(SlowReader pipe) throws IOException {
+		pipe.out.write(LINE);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Measurement(iterations = 5, time = 10)
+	public void lineLatency(FastReader pipe) throws IOException {
+		long target = pipe.sent += LINE.length;
+		pipe.out.write(LINE);
+		while (pipe.received.get() < target)
+			Thread.yield();
+	}
+
+	public static enum Implementation {
+		PIPE, PIPED, RING
+	}
+
+	/**
+	 * A pipe of the chosen implementation, and a thread reading from it until the end of the trial.
+	 */
+	public static abstract class PipeState {
+		@Param
+		public Implementation implementation;
+		OutputStream out;
+		final AtomicLong received = new AtomicLong();
+		long sent;
+		private InputStream in;
+		private Thread reader;
+
+		/**
+		 * @return	Pause of the reader between two reads, in nanoseconds
+		 */
+		abstract long readerPause();
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			switch (implementation) {
+				case PIPE:
+					PipeInputStream pipe = new PipeInputStream(PIPE_SIZE);
+					in = pipe;
+					out = new PipeOutputStream(pipe);
+					break;
+				case PIPED:
+					PipedInputStream piped = new PipedInputStream(PIPE_SIZE);
+					in = piped;
+					out = new PipedOutputStream(piped);
+					break;
+				case RING:
+					RingPipeInputStream ring = new RingPipeInputStream(PIPE_SIZE);
+					in = ring;
+					out = new RingPipeOutputStream(ring);
+					break;
+			}
+			final long pause = readerPause();
+			reader = new Thread("Pipe Benchmark Reader") {
+				@Override
+				public void run() {
+					byte[] buffer = new byte[8192];
+					try {
+						for (int n; (n = in.read(buffer, 0, pause > 0 ? LINE.length : buffer.length)) != -1; ) {
+							received.addAndGet(n);
+							if (pause > 0)
+								LockSupport.parkNanos(pause);
+						}
+					} catch (IOException ignored) {
+					}
+				}
+			};
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException, InterruptedException {
+			out.close();
+			reader.join(2000);
+			in.close();
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class FastReader extends PipeState {
+		@Override
+		long readerPause() {
+			return 0;
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class SlowReader extends PipeState {
+		@Override
+		long readerPause() {
+			return 10000;
+		}
+	}
+}
@@ -0,0 +1,354 @@
+package eu.neurovertex.xmppcraft;
+
+import eu.neurovertex.io.RingPipeInputStream;
+import eu.neurovertex.io.RingPipeOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replays a server log through a pipe into a {@link LogParser}, as fast as the parser takes it, and reports throughput,
+ * per event type callback time and allocation for each listener. The time from reading a line to a listener being done
+ * with it is the Dispatch stage of the {@link Latency} summary.
+ * <p>
+ * Usage : LogParserBenchmark [options] [latest.log]
+ * <ul>
+ *     <li>--lines N : number of synthetic lines to generate when no log file is given (default 1000000)</li>
+ *     <li>--mix chat=40,joined=5,left=5,death=5,achievement=5,log=40 : weights of the synthetic event types</li>
+ *     <li>--repeat N : number of times the input is replayed (default 1)</li>
+ *     <li>--listener class : GameListener to benchmark, with a public no-arg constructor. May be repeated. Defaults to
+ *     {@link LogListener} and a no-op listener.</li>
+ *     <li>--queue N, --sample N, --repeatwindow N : LogParser settings (defaults : 4096, 1, 0). Even with a sample rate
+ *     of 1, generic lines are dropped when the queue is 7/8 full : the drop count is part of the report.</li>
+ * </ul>
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:29
+ */
+public class LogParserBenchmark {
+	private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private static final String[] NAMES = {"Notch", "jeb_", "Dinnerbone", "Grumm", "xXSlayerXx", "bob", "alice", "Steve"};
+	private static final String[] CHAT = {"hi", "anyone got iron ?", "brb", "lol", "where is the nether portal",
+			"can someone tp me to spawn please, I'm lost in a jungle with no food"};
+	private static final String[] DEATHS = {"was slain by Zombie", "fell from a high place", "drowned",
+			"was shot by Skeleton", "burned to death", "tried to swim in lava"};
+	private static final String[] LOGS = {"Can't keep up! Did the system time change, or is the server overloaded? Running %dms behind, skipping %d tick(s)",
+			"%s moved wrongly!", "UUID of player %s is 069a79f4-44e9-4726-a5be-fca90e38aaf5",
+			"%s lost connection: TextComponent{text='Disconnected', siblings=[], style=Style{hasParent=false}}",
+			"Saving chunks for level 'world'/Overworld"};
+
+	public static void main(String[] args) throws Exception {
+		String file = null;
+		int lines = 1000000, repeat = 1, queue = LogParser.DEFAULT_QUEUE_SIZE, sample = 1, repeatWindow = 0;
+		Map<LogEvent.Type, Integer> mix = parseMix("chat=40,joined=5,left=5,death=5,achievement=5,log=40");
+		List<GameListener> listeners = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--lines": lines = Integer.parseInt(args[++i]); break;
+				case "--mix": mix = parseMix(args[++i]); break;
+				case "--repeat": repeat = Integer.parseInt(args[++i]); break;
+				case "--queue": queue = Integer.parseInt(args[++i]); break;
+				case "--sample": sample = Integer.parseInt(args[++i]); break;
+				case "--repeatwindow": repeatWindow = Integer.parseInt(args[++i]); break;
+				case "--listener": listeners.add((GameListener) Class.forName(args[++i]).newInstance()); break;
+				default: file = args[i];
+			}
+		}
+		if (listeners.isEmpty()) {
+			listeners.add(new LogListener());
+			listeners.add(new NullListener());
+		}
+		// Keep the listeners' own logging out of the measurements
+		Logger.getLogger("").setLevel(Level.WARNING);
+
+		byte[] input = file != null ? Files.readAllBytes(Paths.get(file)) : synthetic(lines, mix, new Random(42));
+		int lineCount = 0;
+		for (byte b : input)
+			if (b == '\n')
+				lineCount++;
+		System.out.printf("Input : %d lines, %d bytes, replayed %d time(s)%n", lineCount, input.length, repeat);
+
+		// Warm up the JIT on a shorter run, then measure
+		run(input, Math.max(1, repeat / 10), queue, sample, repeatWindow, listeners, false, lineCount);
+		run(input, repeat, queue, sample, repeatWindow, listeners, true, lineCount);
+	}
+
+	private static void run(final byte[] input, final int repeat, int queue, int sample, int repeatWindow, List<GameListener> listeners,
+							boolean report, int lineCount) throws Exception {
+		RingPipeInputStream in = new RingPipeInputStream(1 << 20);
+		final RingPipeOutputStream out = new RingPipeOutputStream(in);
+		LogParser parser = new LogParser(in, queue, LogFormat.VANILLA);
+		parser.setSampleRate(sample);
+		parser.setRepeatWindow(repeatWindow);
+		parser.setLagRecorded(false); // The input's timestamps have nothing to do with the current time
+		CountDownLatch done = new CountDownLatch(1);
+		Latency.reset();
+		List<TimingListener> timers = new ArrayList<>();
+		for (GameListener l : listeners) {
+			TimingListener timer = new TimingListener(l);
+			timers.add(timer);
+			parser.addGameChatListener(timer);
+		}
+		parser.subscribe(new ExitListener(done), EnumSet.of(LogEvent.Type.EXIT), null);
+
+		Set<Thread> previous = Thread.getAllStackTraces().keySet();
+		parser.start();
+		Thread reader = findThread("LogParser Stream Reader", previous), dispatcher = findThread("LogParser Listener Thread", previous);
+		long readerAllocated = threads.getThreadAllocatedBytes(reader.getId()),
+				dispatcherAllocated = threads.getThreadAllocatedBytes(dispatcher.getId());
+		long start = System.nanoTime();
+		Thread writer = new Thread("Benchmark writer") {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < repeat; i++)
+						for (int off = 0; off < input.length; off += 8192)
+							out.write(input, off, Math.min(8192, input.length - off));
+					out.write("[00:00:00] [Server thread/INFO]: Stopping the server\n".getBytes());
+					out.flush();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		writer.start();
+		if (!done.await(10, TimeUnit.MINUTES))
+			throw new IllegalStateException("Parser didn't finish");
+		for (LogParser.Subscription sub : parser.getSubscriptions())
+			while (sub.getQueueSize() > 0) // Each listener has its own queue, wait for the slowest
+				Thread.sleep(1);
+		long elapsed = System.nanoTime() - start;
+		readerAllocated = threads.getThreadAllocatedBytes(reader.getId()) - readerAllocated;
+		dispatcherAllocated = threads.getThreadAllocatedBytes(dispatcher.getId()) - dispatcherAllocated;
+		out.close();
+		reader.join(1000); // Let the reader see the end of the stream rather than interrupting it
+		parser.close();
+
+		if (!report)
+			return;
+		long total = (long) lineCount * repeat;
+		System.out.printf("%d lines in %.3fs : %.0f lines/s%n", total, elapsed / 1e9, total / (elapsed / 1e9));
+		System.out.printf("Events : %d classified, %d dropped, %d folded, %d listener errors%n",
+				parser.getReadCount(), parser.getDroppedCount(), parser.getFoldedCount(), parser.getListenerErrors());
+		System.out.printf("Allocated per line : reader %.1f B, listener thread %.1f B (listener callbacks excluded)%n",
+				readerAllocated / (double) total, dispatcherAllocated / (double) total);
+		for (TimingListener timer : timers)
+			timer.report(total);
+		for (LogParser.Subscription sub : parser.getSubscriptions())
+			System.out.printf("%s : %d dispatched, %d dropped, %d stalls%n", sub.getListener() instanceof TimingListener ?
+					((TimingListener) sub.getListener()).delegate.getClass().getName() : sub.getListener().getClass().getName(),
+					sub.getDispatchedCount(), sub.getDroppedCount(), sub.getStallCount());
+		System.out.println(Latency.summary());
+	}
+
+	/**
+	 * Finds a thread by name, ignoring those of previous runs.
+	 */
+	private static Thread findThread(String name, Set<Thread> ignored) {
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+			if (name.equals(thread.getName()) && !ignored.contains(thread))
+				return thread;
+		throw new IllegalStateException("No thread named " + name);
+	}
+
+	private static Map<LogEvent.Type, Integer> parseMix(String mix) {
+		Map<LogEvent.Type, Integer> weights = new EnumMap<>(LogEvent.Type.class);
+		for (String entry : mix.split(",")) {
+			String[] parts = entry.split("=");
+			String name = parts[0].trim().toUpperCase();
+			weights.put(name.equals("CHAT") ? LogEvent.Type.MESSAGE : LogEvent.Type.valueOf(name), Integer.parseInt(parts[1].trim()));
+		}
+		weights.remove(LogEvent.Type.EXIT); // Would end the run
+		return weights;
+	}
+
+	/**
+	 * Generates a vanilla log with the given proportions of event types.
+	 */
+	private static byte[] synthetic(int lines, Map<LogEvent.Type, Integer> mix, Random random) {
+		LogEvent.Type[] types = mix.keySet().toArray(new LogEvent.Type[mix.size()]);
+		int[] cumulative = new int[types.length];
+		int sum = 0;
+		for (int i = 0; i < types.length; i++)
+			cumulative[i] = sum += mix.get(types[i]);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(lines * 64);
+		StringBuilder sb = new StringBuilder();
+		Charset charset = Charset.defaultCharset();
+		for (int i = 0; i < lines; i++) {
+			int pick = random.nextInt(sum), t = 0;
+			while (cumulative[t] <= pick)
+				t++;
+			String name = NAMES[random.nextInt(NAMES.length)];
+			sb.setLength(0);
+			sb.append(String.format("[%02d:%02d:%02d] [Server thread/INFO]: ", i / 3600 % 24, i / 60 % 60, i % 60));
+			switch (types[t]) {
+				case MESSAGE: sb.append('<').append(name).append("> ").append(CHAT[random.nextInt(CHAT.length)]); break;
+				case JOINED: sb.append(name).append(" joined the game"); break;
+				case LEFT: sb.append(name).append(" left the game"); break;
+				case DEATH: sb.append(name).append(' ').append(DEATHS[random.nextInt(DEATHS.length)]); break;
+				case ACHIEVEMENT: sb.append(name).append(" has just earned the achievement [Taking Inventory]"); break;
+				default:
+					sb.append(String.format(LOGS[random.nextInt(LOGS.length)].replace("%s", name), random.nextInt(5000), random.nextInt(100)));
+			}
+			sb.append('\n');
+			byte[] bytes = sb.toString().getBytes(charset);
+			out.write(bytes, 0, bytes.length);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Times and measures the allocations of every callback of a listener, by event type. Only called from the
+	 * listener's subscription worker. The time is that of the callback alone, queueing excluded.
+	 */
+	private static class TimingListener implements GameListener {
+		private final GameListener delegate;
+		private final long[][] samples = new long[LogEvent.Type.values().length][];
+		private final int[] counts = new int[samples.length];
+		/**
+		 * Bytes allocated by getThreadAllocatedBytes itself, measured on the worker on its first callback. -1 until then.
+		 */
+		private long overhead = -1;
+		private long allocated, start, startAllocated;
+
+		private TimingListener(GameListener delegate) {
+			this.delegate = delegate;
+			for (int i = 0; i < samples.length; i++)
+				samples[i] = new long[1024];
+		}
+
+		private void begin() {
+			if (overhead < 0) {
+				long id = Thread.currentThread().getId(), before = threads.getThreadAllocatedBytes(id);
+				overhead = threads.getThreadAllocatedBytes(id) - before;
+			}
+			startAllocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			start = System.nanoTime();
+		}
+
+		private void end(LogEvent.Type type) {
+			long time = System.nanoTime() - start;
+			allocated += threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - startAllocated - overhead;
+			int i = type.ordinal();
+			if (counts[i] == samples[i].length)
+				samples[i] = Arrays.copyOf(samples[i], counts[i] * 2);
+			samples[i][counts[i]++] = time;
+		}
+
+		private void report(long lines) {
+			System.out.printf("%s : %.1f B allocated per line, callback time :%n", delegate.getClass().getName(), allocated / (double) lines);
+			for (LogEvent.Type type : LogEvent.Type.values()) {
+				int n = counts[type.ordinal()];
+				if (n == 0)
+					continue;
+				long[] s = Arrays.copyOf(samples[type.ordinal()], n);
+				Arrays.sort(s);
+				System.out.printf("  %-12s %9d events  p50 %7dns  p90 %7dns  p99 %7dns  p99.9 %8dns  max %9dns%n", type, n,
+						s[n / 2], s[(int) (n * 0.9)], s[(int) (n * 0.99)], s[(int) (n * 0.999)], s[n - 1]);
+			}
+		}
+
+		@Override
+		public void onJoinLeft(String username, boolean joined) {
+			begin();
+			delegate.onJoinLeft(username, joined);
+			end(joined ? LogEvent.Type.JOINED : LogEvent.Type.LEFT);
+		}
+
+		@Override
+		public void onMessage(String username, String message) {
+			begin();
+			delegate.onMessage(username, message);
+			end(LogEvent.Type.MESSAGE);
+		}
+
+		@Override
+		public void onAchievement(String username, String achievement) {
+			begin();
+			delegate.onAchievement(username, achievement);
+			end(LogEvent.Type.ACHIEVEMENT);
+		}
+
+		@Override
+		public void onDeath(String username, String death) {
+			begin();
+			delegate.onDeath(username, death);
+			end(LogEvent.Type.DEATH);
+		}
+
+		@Override
+		public void onLog(String log) {
+			begin();
+			delegate.onLog(log);
+			end(LogEvent.Type.LOG);
+		}
+
+		@Override
+		public void onExit() {
+			begin();
+			delegate.onExit();
+			end(LogEvent.Type.EXIT);
+		}
+
+		@Override
+		public boolean onConsoleInput(String input) {
+			return delegate.onConsoleInput(input);
+		}
+	}
+
+	/**
+	 * Ends the run on the "Stopping the server" line appended to the input.
+	 */
+	private static class ExitListener extends NullListener {
+		private final CountDownLatch done;
+
+		private ExitListener(CountDownLatch done) {
+			this.done = done;
+		}
+
+		@Override
+		public void onExit() {
+			done.countDown();
+		}
+	}
+
+	public static class NullListener implements GameListener {
+		@Override
+		public void onJoinLeft(String username, boolean joined) {
+		}
+
+		@Override
+		public void onMessage(String username, String message) {
+		}
+
+		@Override
+		public void onAchievement(String username, String achievement) {
+		}
+
+		@Override
+		public void onDeath(String username, String death) {
+		}
+
+		@Override
+		public void onLog(String log) {
+		}
+
+		@Override
+		public void onExit() {
+		}
+
+		@Override
+		public boolean onConsoleInput(String input) {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package eu.neurovertex.io;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes to a named pipe (or a regular file, in append mode) that may come and go. The file is only opened on the first
+ * write, since opening a pipe blocks until the other end is opened too, and reopened once if a write fails, typically
+ * because the process reading the pipe was restarted.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:31
+ */
+public class FifoOutputStream extends OutputStream {
+	private static final Logger log = Logger.getLogger(FifoOutputStream.class.getName());
+	private final String path;
+	private OutputStream out;
+
+	public FifoOutputStream(String path) {
+		this.path = path;
+	}
+
+	@Override
+	public synchronized void write(int b) throws IOException {
+		write(new byte[]{(byte) b}, 0, 1);
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		try {
+			stream().write(b, off, len);
+		} catch (IOException e) {
+			log.log(Level.FINE, "Write to " + path + " failed, reopening", e);
+			close();
+			stream().write(b, off, len);
+		}
+	}
+
+	private OutputStream stream() throws IOException {
+		if (out == null)
+			out = new FileOutputStream(path, true);
+		return out;
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		if (out != null)
+			out.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (out != null)
+			try {
+				out.close();
+			} finally {
+				out = null;
+			}
+	}
+}
@@ -0,0 +1,237 @@
+package eu.neurovertex.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Follows a growing file, like tail -F : reads block until data is appended to the file, and the stream never ends
+ * unless closed. Appended regions are read in bulk through a {@link FileChannel}, and a {@link WatchService} on the
+ * parent directory wakes the reader up when the file changes.
+ * <p>
+ * Rotation (the file being replaced by a new one, as the server does with logs/latest.log on startup) is detected through
+ * the file key, or the creation time where file keys aren't supported; the old file is read to its end before switching
+ * to the new one. A file truncated in place is read again from its start.
+ * <p>
+ * The position is saved to an offset file at most once a second and when the stream is closed, so that a new instance
+ * resumes where the previous one stopped, provided the file wasn't rotated in between. Otherwise, reading starts at the
+ * current end of the file rather than replaying the new file from its start.
+ * <p>
+ * Like any interruptible channel, the underlying FileChannel is closed when the reading thread is interrupted. That read
+ * fails, but the next one reopens the file where the previous one stopped, so the stream can outlive its reader.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:31
+ */
+public class FileTailInputStream extends InputStream {
+	private static final Logger log = Logger.getLogger(FileTailInputStream.class.getName());
+	private static final long SAVE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+	private final Path file, offsetFile;
+	private final WatchService watcher;
+	private final ByteBuffer buffer = ByteBuffer.allocate(65536);
+	private FileChannel channel;
+	private String identity;
+	/**
+	 * Identity of the file whose channel an interrupt closed, to reopen it where it was left
+	 */
+	private String interruptedIdentity;
+	/**
+	 * Position in the file of the end of the buffered data
+	 */
+	private long position;
+	private long lastSave;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a FileTailInputStream
+	 * @param file          File to follow. Doesn't have to exist yet.
+	 * @param offsetFile    File the position is saved to, or null to always start at the end of the file
+	 * @throws IOException	If the parent directory can't be watched
+	 */
+	public FileTailInputStream(Path file, Path offsetFile) throws IOException {
+		this.file = file.toAbsolutePath();
+		this.offsetFile = offsetFile;
+		watcher = file.getFileSystem().newWatchService();
+		this.file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		buffer.flip();
+		if (Files.exists(this.file))
+			open(savedOffset());
+	}
+
+	/**
+	 * Reads the saved position, if it applies to the current file.
+	 * @return	The saved position, or -1 to start at the end of the file
+	 */
+	private long savedOffset() {
+		if (offsetFile == null || !Files.exists(offsetFile))
+			return -1;
+		try {
+			List<String> lines = Files.readAllLines(offsetFile, StandardCharsets.UTF_8);
+			if (lines.size() >= 2)
+				return lines.get(0).equals(identity()) ? Long.parseLong(lines.get(1).trim()) : -1;
+		} catch (IOException | NumberFormatException e) {
+			log.log(Level.WARNING, "Couldn't read saved offset from " + offsetFile, e);
+		}
+		return -1;
+	}
+
+	/**
+	 * Opens the file.
+	 * @param offset    Position to start at, or -1 for the end of the file. Clamped to the file size.
+	 * @throws IOException	If the file can't be opened
+	 */
+	private void open(long offset) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		identity = identity();
+		long size = channel.size();
+		position = offset < 0 || offset > size ? size : offset;
+		log.fine("Following " + file + " from " + position);
+	}
+
+	/**
+	 * Something that changes when the file is replaced by another one with the same name.
+	 */
+	private String identity() throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		Object key = attributes.fileKey();
+		return key != null ? key.toString() : String.valueOf(attributes.creationTime().toMillis());
+	}
+
+	@Override
+	public int read() throws IOException {
+		while (!buffer.hasRemaining())
+			if (!await())
+				return -1;
+		return buffer.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		while (!buffer.hasRemaining())
+			if (!await())
+				return -1;
+		int n = Math.min(len, buffer.remaining());
+		buffer.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+	/**
+	 * Refills the buffer, waiting for the file to change if there is nothing new to read.
+	 * @return	false if the stream was closed
+	 * @throws IOException	If reading fails, or if interrupted while waiting
+	 */
+	private boolean await() throws IOException {
+		if (closed)
+			return false;
+		if (fill())
+			return true;
+		try {
+			WatchKey key = watcher.poll(1, TimeUnit.SECONDS); // The timeout covers events the watcher might miss
+			if (key != null) {
+				key.pollEvents();
+				key.reset();
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		} catch (ClosedWatchServiceException e) {
+			return false;
+		}
+		return !closed;
+	}
+
+	/**
+	 * Reads the next appended region, remembering where to resume if an interrupt closed the channel.
+	 * @return	true if data was read
+	 */
+	private boolean fill() throws IOException {
+		try {
+			return readAppended();
+		} catch (ClosedByInterruptException e) {
+			if (channel != null) {
+				interruptedIdentity = identity;
+				channel = null;
+			}
+			buffer.clear();
+			buffer.flip();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the next appended region, switching files if the current one was rotated or truncated.
+	 * @return	true if data was read
+	 */
+	private boolean readAppended() throws IOException {
+		if (channel == null) {
+			if (!Files.exists(file))
+				return false;
+			String previous = interruptedIdentity;
+			interruptedIdentity = null;
+			open(previous != null && previous.equals(identity()) ? position : 0);
+		}
+		buffer.clear();
+		int n = channel.read(buffer, position);
+		buffer.flip();
+		if (n > 0) {
+			position += n;
+			if (System.nanoTime() - lastSave >= SAVE_INTERVAL)
+				saveOffset();
+			return true;
+		}
+		// Nothing left in the current file, check whether it's still the one we should follow
+		if (!Files.exists(file) || !identity().equals(identity)) {
+			log.info(file + " was rotated");
+			channel.close();
+			channel = null;
+			return readAppended();
+		}
+		if (channel.size() < position) {
+			log.info(file + " was truncated");
+			position = 0;
+			return readAppended();
+		}
+		return false;
+	}
+
+	/**
+	 * Saves the position of the first byte not yet returned by read.
+	 */
+	private void saveOffset() {
+		lastSave = System.nanoTime();
+		if (offsetFile == null || identity == null)
+			return;
+		try {
+			Files.write(offsetFile, (identity + "\n" + (position - buffer.remaining()) + "\n").getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Couldn't save offset to " + offsetFile, e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		watcher.close();
+		saveOffset();
+		if (channel != null)
+			channel.close();
+	}
+}
@@ -0,0 +1,195 @@
+package eu.neurovertex.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decouples a writer from the stream it writes to : writes are copied into a staging ring buffer, without locks or
+ * signalling, and a drainer thread wakes up periodically to pass the complete lines on to the target, straight from
+ * the staging buffer, in one write (two if the batch wraps around the end of the buffer).
+ * The writing thread only pays for a copy, and the target sees one write per batch instead of one per print call.
+ * <p>
+ * Writes must be serialized by the caller, as {@link java.io.PrintStream} does. If the staging buffer gets full, the
+ * writer wakes the drainer up and parks until the drainer has passed a batch on, which is only as long as the target
+ * takes, so the target should never block itself (e.g. a {@link NonBlockingPipeOutputStream}). A line longer than the staging buffer is passed on in
+ * pieces. {@link #flush()} doesn't wait for the drainer : data is passed on within the batch interval anyway.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:44
+ */
+public class LineBatchingOutputStream extends OutputStream {
+	private static final Logger log = Logger.getLogger(LineBatchingOutputStream.class.getName());
+	private final OutputStream target;
+	private final byte[] buffer;
+	private final int mask;
+	private final long interval;
+	private final byte[] one = new byte[1];
+	/**
+	 * head is the position of the next byte to pass on, tail of the next byte to write. Both only grow.
+	 */
+	private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+	/**
+	 * Last value of head seen by the writer
+	 */
+	private long writerHead;
+	/**
+	 * Writer parked until the drainer makes room in the staging buffer, or null
+	 */
+	private volatile Thread waitingWriter;
+	private final Thread drainer;
+	private volatile boolean closed;
+	private volatile long batches;
+
+	/**
+	 * Creates the stream and starts its drainer
+	 * @param target      Stream to pass the lines on to
+	 * @param size        Minimum size of the staging buffer. Rounded up to the next power of two.
+	 * @param interval    Time between two batches, in milliseconds
+	 */
+	public LineBatchingOutputStream(OutputStream target, int size, long interval) {
+		if (size <= 0)
+			throw new IllegalArgumentException("Size <= 0");
+		int capacity = Integer.highestOneBit(size);
+		if (capacity < size)
+			capacity <<= 1;
+		this.target = target;
+		buffer = new byte[capacity];
+		mask = capacity - 1;
+		this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+		drainer = new Thread(new Drainer(), "Line Batching Drainer");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		one[0] = (byte) b;
+		write(one, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off)
+			throw new IndexOutOfBoundsException();
+		if (closed)
+			throw new IOException("Stream closed");
+		long t = tail.get();
+		while (len > 0) {
+			int free = buffer.length - (int) (t - writerHead);
+			if (free == 0 && (free = buffer.length - (int) (t - (writerHead = head.get()))) == 0) {
+				awaitRoom(t);
+				continue;
+			}
+			int n = Math.min(len, free), index = (int) t & mask, first = Math.min(n, buffer.length - index);
+			System.arraycopy(b, off, buffer, index, first);
+			if (first < n)
+				System.arraycopy(b, off + first, buffer, 0, n - first);
+			t += n;
+			tail.lazySet(t); // Ordered store only : the drainer polls, there's no one to signal
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Wakes the drainer up and parks until it has passed some of the staging buffer on.
+	 * @param t    Current tail
+	 * @throws IOException	If the stream was closed, or the drainer died, in the meantime, or if interrupted
+	 */
+	private void awaitRoom(long t) throws IOException {
+		waitingWriter = Thread.currentThread();
+		try {
+			LockSupport.unpark(drainer);
+			// Checked again after publishing waitingWriter, in case the drainer made room in between
+			while (t - head.get() == buffer.length && !closed) {
+				LockSupport.park(this);
+				if (Thread.interrupted())
+					throw new InterruptedIOException();
+			}
+		} finally {
+			waitingWriter = null;
+		}
+		if (closed)
+			throw new IOException("Stream closed");
+	}
+
+	/**
+	 * @return	Number of batches passed on to the target
+	 */
+	public long getBatchCount() {
+		return batches;
+	}
+
+	/**
+	 * Passes the complete lines in the staging buffer on to the target. Drainer thread only.
+	 * @param all    Whether to pass on an incomplete line too
+	 */
+	private void drain(boolean all) throws IOException {
+		long h = head.get(), t = tail.get(), end = t;
+		if (!all && t - h < buffer.length) // A full buffer is passed on as is, even if it doesn't end a line
+			while (end > h && buffer[(int) (end - 1) & mask] != '\n')
+				end--;
+		if (end == h)
+			return;
+		int n = (int) (end - h), index = (int) h & mask, first = Math.min(n, buffer.length - index);
+		target.write(buffer, index, first);
+		if (first < n)
+			target.write(buffer, 0, n - first);
+		head.set(end);
+		batches++;
+		Thread writer = waitingWriter;
+		if (writer != null)
+			LockSupport.unpark(writer);
+	}
+
+	/**
+	 * Doesn't flush anything : the drainer passes data on within the batch interval
+	 */
+	@Override
+	public void flush() {
+	}
+
+	/**
+	 * Passes on everything still staged, then closes the target
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		LockSupport.unpark(drainer);
+		try {
+			drainer.join();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+		target.close();
+	}
+
+	private class Drainer implements Runnable {
+		@Override
+		public void run() {
+			try {
+				while (!closed) {
+					LockSupport.parkNanos(this, interval);
+					drain(false);
+				}
+				drain(true);
+			} catch (IOException e) {
+				if (!closed)
+					log.log(Level.WARNING, "Couldn't pass output on", e);
+				closed = true;
+			} finally {
+				Thread writer = waitingWriter;
+				if (writer != null)
+					LockSupport.unpark(writer);
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package eu.neurovertex.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Splits a byte stream into lines without decoding it first. Lines are framed in a reusable buffer and handed to a
+ * {@link Filter} as raw bytes; only accepted lines are decoded into Strings, the rest are skipped without allocating.
+ * The filter may also rewrite accepted lines in place, for instance to strip unwanted characters.
+ * Lines are terminated by '\n', optionally preceded by '\r'. Lines longer than the maximum buffer size are discarded.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:20
+ */
+public class LineFramer {
+	private static final int DEFAULT_BUFFER_SIZE = 8192, DEFAULT_MAX_LINE = 65536;
+	private final InputStream in;
+	private final Filter filter;
+	private final Charset charset;
+	private final int maxLineLength;
+	private byte[] buffer;
+	/**
+	 * Unconsumed data is in [start, end). Bytes in [start, scan) are known not to contain a line feed.
+	 */
+	private int start, end, scan;
+	/**
+	 * Set when the current line overflowed the buffer, until its end is found.
+	 */
+	private boolean overflow;
+	private long discarded, blockedTime;
+
+	public LineFramer(InputStream in, Filter filter) {
+		this(in, filter, Charset.defaultCharset(), DEFAULT_BUFFER_SIZE, DEFAULT_MAX_LINE);
+	}
+
+	/**
+	 * Creates a LineFramer
+	 * @param in               Stream to read from
+	 * @param filter           Decides which lines are decoded and returned
+	 * @param charset          Charset accepted lines are decoded with
+	 * @param bufferSize       Initial size of the buffer
+	 * @param maxLineLength    Maximum line length, in bytes. The buffer grows up to this size.
+	 */
+	public LineFramer(InputStream in, Filter filter, Charset charset, int bufferSize, int maxLineLength) {
+		if (bufferSize <= 0 || maxLineLength < bufferSize)
+			throw new IllegalArgumentException("Invalid buffer size");
+		this.in = in;
+		this.filter = filter;
+		this.charset = charset;
+		this.maxLineLength = maxLineLength;
+		this.buffer = new byte[bufferSize];
+	}
+
+	/**
+	 * Reads up to the next accepted line, blocking if necessary.
+	 * @return	The line, without its terminator, or null if the end of the stream was reached
+	 * @throws IOException	If the underlying stream throws one
+	 */
+	public String readLine() throws IOException {
+		while (true) {
+			for (int i = scan; i < end; i++) {
+				if (buffer[i] != '\n')
+					continue;
+				int lineStart = start, lineEnd = i;
+				start = scan = i + 1;
+				if (overflow) {
+					overflow = false;
+					continue;
+				}
+				if (lineEnd > lineStart && buffer[lineEnd - 1] == '\r')
+					lineEnd--;
+				int length = filter.accept(buffer, lineStart, lineEnd - lineStart);
+				if (length >= 0)
+					return new String(buffer, lineStart, length, charset);
+				discarded++;
+			}
+			scan = end;
+			if (!fill()) {
+				if (start == end || overflow)
+					return null;
+				int lineStart = start, length = end - start;
+				start = scan = end;
+				length = filter.accept(buffer, lineStart, length);
+				if (length >= 0)
+					return new String(buffer, lineStart, length, charset);
+				discarded++;
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Makes room in the buffer and reads more data into it.
+	 * @return	false on end of stream
+	 * @throws IOException	If the underlying stream throws one
+	 */
+	private boolean fill() throws IOException {
+		if (start > 0) {
+			System.arraycopy(buffer, start, buffer, 0, end - start);
+			end -= start;
+			scan -= start;
+			start = 0;
+		}
+		if (end == buffer.length) {
+			if (buffer.length < maxLineLength) {
+				byte[] newBuffer = new byte[Math.min(buffer.length * 2, maxLineLength)];
+				System.arraycopy(buffer, 0, newBuffer, 0, end);
+				buffer = newBuffer;
+			} else {
+				if (!overflow)
+					discarded++;
+				overflow = true;
+				start = end = scan = 0;
+			}
+		}
+		long t0 = System.nanoTime();
+		int n = in.read(buffer, end, buffer.length - end);
+		blockedTime += System.nanoTime() - t0;
+		if (n < 0)
+			return false;
+		end += n;
+		return true;
+	}
+
+	/**
+	 * Number of lines read but not returned, because the filter rejected them or because they were too long.
+	 * @return	The number of discarded lines
+	 */
+	public long getDiscardedCount() {
+		return discarded;
+	}
+
+	/**
+	 * Time spent reading from the underlying stream, which is mostly time spent waiting for data.
+	 * @return	The total time, in nanoseconds
+	 */
+	public long getBlockedTime() {
+		return blockedTime;
+	}
+
+	/**
+	 * Decides whether a line is worth decoding.
+	 */
+	public interface Filter {
+		/**
+		 * Checks a line. Implementations may modify the line in place, within [off, off + len), but must not keep a
+		 * reference to the buffer.
+		 * @param buffer    Buffer holding the line
+		 * @param off       Offset of the line in the buffer
+		 * @param len       Length of the line, terminator excluded
+		 * @return	The length of the line to decode (starting at off), or -1 if it should be discarded
+		 */
+		public int accept(byte[] buffer, int off, int len);
+	}
+}
@@ -0,0 +1,259 @@
+package eu.neurovertex.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes to a {@link RingPipeOutputStream} without ever waiting for the reader, so that a stalled reader can't block
+ * the writing threads. When the pipe is full, the overflow is either dropped or spilled to a file, which a background
+ * thread feeds into the pipe as the reader catches up.
+ * <p>
+ * Dropping is done a line at a time : once a write overflows, everything up to the next line feed is dropped too, and
+ * a line cut short in the pipe is terminated, so the reader never sees two halves of different lines glued together.
+ * Spilling keeps the order of the data : once something was spilled, every write goes to the file until the file has
+ * been drained. If the spill file reaches its maximum size, further overflow is dropped.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:42
+ */
+public class NonBlockingPipeOutputStream extends OutputStream {
+	private static final Logger log = Logger.getLogger(NonBlockingPipeOutputStream.class.getName());
+	private static final byte[] NEWLINE = {'\n'};
+	private final RingPipeOutputStream pipe;
+	private final OverflowPolicy policy;
+	private final String spillPath;
+	private final long spillMax;
+	private final byte[] one = new byte[1];
+	private FileChannel spill;
+	private long spillRead, spillWrite;
+	private Thread drainer;
+	/**
+	 * dropping : the rest of the current line is being dropped. midLine, spillMidLine : the last byte in the pipe (resp.
+	 * the spill file) isn't a line feed. truncated : the last line was cut short, and has to be terminated before
+	 * anything else is written.
+	 */
+	private boolean dropping, midLine, spillMidLine, truncated, closed;
+	private volatile long droppedBytes, droppedLines, spilledBytes;
+
+	/**
+	 * Creates a stream that drops overflow
+	 * @param pipe    Pipe to write to. Nothing else may write to it.
+	 */
+	public NonBlockingPipeOutputStream(RingPipeOutputStream pipe) {
+		this(pipe, OverflowPolicy.DROP, null, 0);
+	}
+
+	/**
+	 * @param pipe         Pipe to write to. Nothing else may write to it.
+	 * @param policy       What to do when the pipe is full
+	 * @param spillPath    Spill file, created on first use. Ignored unless the policy is SPILL.
+	 * @param spillMax     Maximum size of the spill file, in bytes
+	 */
+	public NonBlockingPipeOutputStream(RingPipeOutputStream pipe, OverflowPolicy policy, String spillPath, long spillMax) {
+		this.pipe = pipe;
+		this.policy = policy;
+		this.spillPath = spillPath;
+		this.spillMax = spillMax;
+	}
+
+	@Override
+	public synchronized void write(int b) throws IOException {
+		one[0] = (byte) b;
+		write(one, 0, 1);
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off)
+			throw new IndexOutOfBoundsException();
+		if (closed)
+			throw new IOException("Stream closed");
+		if (dropping) {
+			int end = lineEnd(b, off, len);
+			droppedBytes += end - off;
+			if (end == off + len)
+				return;
+			droppedLines++;
+			dropping = false;
+			len -= end + 1 - off;
+			off = end + 1;
+		}
+		if (len == 0)
+			return;
+		if (spillWrite > spillRead) {
+			if (!spill(b, off, len))
+				drop(b, off, len);
+			return;
+		}
+		if (truncated && pipe.offer(NEWLINE, 0, 1))
+			truncated = midLine = false;
+		if (!truncated && pipe.offer(b, off, len))
+			midLine = b[off + len - 1] != '\n';
+		else if (policy != OverflowPolicy.SPILL || !spill(b, off, len))
+			drop(b, off, len);
+	}
+
+	/**
+	 * @return	Index of the first line feed in the range, or its end if there is none
+	 */
+	private static int lineEnd(byte[] b, int off, int len) {
+		int end = off;
+		while (end < off + len && b[end] != '\n')
+			end++;
+		return end;
+	}
+
+	private void drop(byte[] b, int off, int len) {
+		if (droppedBytes == 0)
+			log.warning("Pipe full, dropping output");
+		if (spillWrite > spillRead) {
+			truncated |= spillMidLine;
+			spillMidLine = false;
+		} else {
+			truncated |= midLine;
+			midLine = false;
+		}
+		for (int i = off; i < off + len; i++)
+			if (b[i] == '\n')
+				droppedLines++;
+		droppedBytes += len;
+		dropping = b[off + len - 1] != '\n';
+	}
+
+	/**
+	 * Appends to the spill file, and starts the drainer if needed.
+	 * @return	false if the spill file is full or can't be written to
+	 */
+	private boolean spill(byte[] b, int off, int len) {
+		if (spillWrite + len + 1 > spillMax)
+			return false;
+		try {
+			if (spill == null) {
+				spill = new RandomAccessFile(spillPath, "rw").getChannel();
+				spill.truncate(0);
+			}
+			if (truncated && spillWrite == spillRead) {
+				spillWrite += spill.write(ByteBuffer.wrap(NEWLINE), spillWrite);
+				truncated = false;
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+			while (buffer.hasRemaining())
+				spillWrite += spill.write(buffer, spillWrite);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Couldn't write to spill file " + spillPath, e);
+			return false;
+		}
+		spillMidLine = b[off + len - 1] != '\n';
+		spilledBytes += len;
+		if (drainer == null) {
+			drainer = new Thread(new Drainer(), "Pipe Spill Drainer");
+			drainer.setDaemon(true);
+			drainer.start();
+		} else
+			notify();
+		return true;
+	}
+
+	public long getDroppedBytes() {
+		return droppedBytes;
+	}
+
+	public long getDroppedLines() {
+		return droppedLines;
+	}
+
+	public long getSpilledBytes() {
+		return spilledBytes;
+	}
+
+	/**
+	 * @return	Number of bytes in the spill file that the pipe hasn't taken yet
+	 */
+	public synchronized long getSpillSize() {
+		return spillWrite - spillRead;
+	}
+
+	@Override
+	public void flush() {
+		pipe.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		Thread drainer;
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			drainer = this.drainer;
+			notify();
+		}
+		if (drainer != null) {
+			drainer.interrupt();
+			try {
+				drainer.join(1000);
+			} catch (InterruptedException ignored) {
+			}
+		}
+		synchronized (this) {
+			if (spill != null)
+				spill.close();
+		}
+		pipe.close();
+	}
+
+	public static enum OverflowPolicy {
+		DROP, SPILL
+	}
+
+	/**
+	 * Feeds the spill file to the pipe, waiting for the reader as needed, and empties the file once the pipe has taken
+	 * everything.
+	 */
+	private class Drainer implements Runnable {
+		@Override
+		public void run() {
+			ByteBuffer buffer = ByteBuffer.allocate(65536);
+			try {
+				while (true) {
+					long position, end;
+					synchronized (NonBlockingPipeOutputStream.this) {
+						while (spillWrite == spillRead && !closed)
+							NonBlockingPipeOutputStream.this.wait();
+						if (closed)
+							return;
+						position = spillRead;
+						end = spillWrite;
+					}
+					buffer.clear();
+					buffer.limit((int) Math.min(buffer.capacity(), end - position));
+					while (buffer.hasRemaining())
+						spill.read(buffer, position + buffer.position());
+					// Only this thread writes to the pipe while the spill file isn't empty
+					pipe.write(buffer.array(), 0, buffer.limit());
+					synchronized (NonBlockingPipeOutputStream.this) {
+						midLine = buffer.get(buffer.limit() - 1) != '\n';
+						spillRead += buffer.limit();
+						if (spillRead == spillWrite) {
+							spillRead = spillWrite = 0;
+							spill.truncate(0);
+						}
+					}
+				}
+			} catch (InterruptedException ignored) {
+			} catch (IOException e) {
+				if (!closed)
+					log.log(Level.WARNING, "Couldn't drain spill file " + spillPath, e);
+			} finally {
+				synchronized (NonBlockingPipeOutputStream.this) {
+					drainer = null;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package eu.neurovertex.io;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Named statistics of a pipe, registered with the platform MBean server as
+ * eu.neurovertex.io:type=Pipe,name=&lt;name&gt; so that they can be watched from JConsole or any JMX client.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:45
+ */
+public class PipeStats implements PipeStatsMBean {
+	private static final Logger log = Logger.getLogger(PipeStats.class.getName());
+	private static final List<PipeStats> registered = new ArrayList<>();
+	private final String name;
+	private final RingPipeInputStream pipe;
+
+	private PipeStats(String name, RingPipeInputStream pipe) {
+		this.name = name;
+		this.pipe = pipe;
+	}
+
+	/**
+	 * Registers a pipe's statistics, replacing those of any pipe registered under the same name
+	 * @param name    Name of the pipe
+	 * @param pipe    Reading end of the pipe
+	 * @return	The statistics
+	 */
+	public static PipeStats register(String name, RingPipeInputStream pipe) {
+		PipeStats stats = new PipeStats(name, pipe);
+		synchronized (registered) {
+			for (int i = 0; i < registered.size(); i++)
+				if (registered.get(i).name.equals(name))
+					registered.remove(i--);
+			registered.add(stats);
+		}
+		try {
+			ObjectName objectName = new ObjectName("eu.neurovertex.io:type=Pipe,name=" + ObjectName.quote(name));
+			if (ManagementFactory.getPlatformMBeanServer().isRegistered(objectName))
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(stats, objectName);
+		} catch (JMException e) {
+			log.log(Level.WARNING, "Couldn't register MBean for pipe " + name, e);
+		}
+		return stats;
+	}
+
+	/**
+	 * @return	Statistics of every registered pipe, in registration order
+	 */
+	public static List<PipeStats> getAll() {
+		synchronized (registered) {
+			return Collections.unmodifiableList(new ArrayList<>(registered));
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getCapacity() {
+		return pipe.getCapacity();
+	}
+
+	@Override
+	public int getOccupancy() {
+		return pipe.available();
+	}
+
+	@Override
+	public long getHighWaterMark() {
+		return pipe.getHighWaterMark();
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return pipe.getBytesWritten();
+	}
+
+	@Override
+	public long getBytesRead() {
+		return pipe.getBytesRead();
+	}
+
+	@Override
+	public long getWriterStalls() {
+		return pipe.getStallCount();
+	}
+
+	@Override
+	public long getWriterStallTime() {
+		return TimeUnit.NANOSECONDS.toMillis(pipe.getStallTime());
+	}
+
+	@Override
+	public long getReaderIdleTime() {
+		return TimeUnit.NANOSECONDS.toMillis(pipe.getIdleTime());
+	}
+
+	@Override
+	public void resetHighWaterMark() {
+		pipe.resetHighWaterMark();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s : %d/%d bytes (high-water mark %d), %d bytes through, %d writer stalls (%dms), reader idle %dms",
+				name, getOccupancy(), getCapacity(), getHighWaterMark(), getBytesRead(), getWriterStalls(), getWriterStallTime(), getReaderIdleTime());
+	}
+}
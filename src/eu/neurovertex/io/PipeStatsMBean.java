@@ -0,0 +1,27 @@
+package eu.neurovertex.io;
+
+/**
+ * JMX view of a {@link RingPipeInputStream}. Byte counts are in bytes, times in milliseconds.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:45
+ */
+public interface PipeStatsMBean {
+	int getCapacity();
+
+	int getOccupancy();
+
+	long getHighWaterMark();
+
+	long getBytesWritten();
+
+	long getBytesRead();
+
+	long getWriterStalls();
+
+	long getWriterStallTime();
+
+	long getReaderIdleTime();
+
+	void resetHighWaterMark();
+}
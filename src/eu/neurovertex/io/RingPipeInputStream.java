@@ -0,0 +1,236 @@
+package eu.neurovertex.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reading end of a pipe, to replace {@link PipeInputStream}. The buffer shared with a {@link RingPipeOutputStream} is
+ * a chain of fixed-size segments taken from a {@link SegmentPool} : the writer adds segments as it needs them, up to
+ * the capacity of the pipe, and the reader gives them back to the pool as soon as it is done with them, so an idle pipe
+ * only holds one or two segments. The read and write cursors are atomic counters, so the reader never takes a lock,
+ * and bulk transfers are one array copy per segment. A side that has to wait spins briefly, then yields, then parks
+ * until the other side signals it, instead of polling.
+ * <p>
+ * Only one thread may read at a time. Writers are serialized by the output stream, so any number of threads may write.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:40
+ */
+public class RingPipeInputStream extends InputStream {
+	private static final int SPINS = 64;
+	final SegmentPool pool;
+	final int capacity, segmentSize;
+	/**
+	 * Segment the writer starts from. Only used until it is connected.
+	 */
+	SegmentPool.Segment first;
+	private SegmentPool.Segment readSegment;
+	/**
+	 * Position of the first byte of readSegment
+	 */
+	private long readBase;
+	/**
+	 * head is the position of the next byte to read, tail of the next byte to write. Both only grow.
+	 */
+	final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+	/**
+	 * Last value of tail seen by the reader. Avoids reading the writer's counter on every call.
+	 */
+	private long readerTail;
+	volatile Thread parkedReader, parkedWriter;
+	volatile boolean closedByReader, closedByWriter;
+	boolean connected;
+	/**
+	 * Statistics. highWater, stallCount and stallTime are only updated by the writer, idleTime by the reader.
+	 */
+	volatile long highWater, stallCount, stallTime, idleTime;
+	/**
+	 * Set by {@link #resetHighWaterMark()}, so that the writer resets highWater on its next write
+	 */
+	volatile boolean highWaterReset;
+
+	/**
+	 * Creates a pipe using the shared segment pool
+	 * @param capacity    Maximum number of bytes buffered
+	 */
+	public RingPipeInputStream(int capacity) {
+		this(capacity, SegmentPool.SHARED);
+	}
+
+	/**
+	 * Creates a pipe
+	 * @param capacity    Maximum number of bytes buffered
+	 * @param pool        Pool to take segments from
+	 */
+	public RingPipeInputStream(int capacity, SegmentPool pool) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Pipe Size <= 0");
+		this.capacity = capacity;
+		this.pool = pool;
+		segmentSize = pool.getSegmentSize();
+		readSegment = first = pool.acquire();
+	}
+
+	@Override
+	public int read() throws IOException {
+		long h = head.get();
+		if (h == readerTail && !awaitData(h))
+			return -1;
+		if (h - readBase == segmentSize)
+			nextSegment();
+		int b = readSegment.data[(int) (h - readBase)] & 0xFF;
+		consumed(h + 1);
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off)
+			throw new IndexOutOfBoundsException();
+		if (len == 0)
+			return 0;
+		long h = head.get();
+		if (h == readerTail && !awaitData(h))
+			return -1;
+		int n = (int) Math.min(len, readerTail - h);
+		for (int done = 0; done < n; ) {
+			if (h - readBase == segmentSize)
+				nextSegment();
+			int index = (int) (h - readBase), count = Math.min(n - done, segmentSize - index);
+			System.arraycopy(readSegment.data, index, b, off + done, count);
+			done += count;
+			h += count;
+		}
+		consumed(h);
+		return n;
+	}
+
+	/**
+	 * Moves on to the next segment once the current one has been read entirely, and gives it back to the pool. The
+	 * writer has necessarily linked the next segment, since there is data past this one.
+	 */
+	private void nextSegment() {
+		SegmentPool.Segment done = readSegment;
+		readSegment = done.next;
+		readBase += segmentSize;
+		pool.release(done);
+	}
+
+	/**
+	 * Publishes the new read position and wakes the writer up if it is waiting for room.
+	 */
+	private void consumed(long h) {
+		head.set(h);
+		Thread writer = parkedWriter;
+		if (writer != null)
+			LockSupport.unpark(writer);
+	}
+
+	/**
+	 * Waits until data is available, and updates the cached tail.
+	 * @param h    Current read position
+	 * @return	false if the pipe is empty and was closed by the writer
+	 * @throws IOException	If the pipe was closed by the reader, or if interrupted
+	 */
+	private boolean awaitData(long h) throws IOException {
+		long start = System.nanoTime();
+		try {
+			return spinOrPark(h);
+		} finally {
+			idleTime += System.nanoTime() - start;
+		}
+	}
+
+	private boolean spinOrPark(long h) throws IOException {
+		for (int i = 0; i < SPINS; i++) {
+			if ((readerTail = tail.get()) != h)
+				return true;
+			if (closedByReader)
+				throw new IOException("Pipe closed");
+			if (closedByWriter)
+				return (readerTail = tail.get()) != h;
+			if (i >= SPINS / 2)
+				Thread.yield();
+		}
+		Thread current = Thread.currentThread();
+		try {
+			while (true) {
+				parkedReader = current;
+				if ((readerTail = tail.get()) != h)
+					return true;
+				if (closedByReader)
+					throw new IOException("Pipe closed");
+				if (closedByWriter)
+					return (readerTail = tail.get()) != h;
+				LockSupport.park(this);
+				if (Thread.interrupted())
+					throw new InterruptedIOException();
+			}
+		} finally {
+			parkedReader = null;
+		}
+	}
+
+	@Override
+	public int available() {
+		return (int) (tail.get() - head.get());
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return	Largest number of bytes the pipe has held at once
+	 */
+	public long getHighWaterMark() {
+		return highWaterReset ? available() : highWater;
+	}
+
+	/**
+	 * Restarts the high-water mark from the current occupancy. Takes effect on the writer's next write.
+	 */
+	public void resetHighWaterMark() {
+		highWaterReset = true;
+	}
+
+	public long getBytesWritten() {
+		return tail.get();
+	}
+
+	public long getBytesRead() {
+		return head.get();
+	}
+
+	/**
+	 * @return	Number of times the writer had to wait for room
+	 */
+	public long getStallCount() {
+		return stallCount;
+	}
+
+	/**
+	 * @return	Total time the writer spent waiting for room, in nanoseconds
+	 */
+	public long getStallTime() {
+		return stallTime;
+	}
+
+	/**
+	 * @return	Total time the reader spent waiting for data, in nanoseconds
+	 */
+	public long getIdleTime() {
+		return idleTime;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closedByReader = true;
+		Thread writer = parkedWriter;
+		if (writer != null)
+			LockSupport.unpark(writer);
+	}
+}
@@ -0,0 +1,168 @@
+package eu.neurovertex.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writing end of a {@link RingPipeInputStream}. Writes are serialized with a lock, since the pipe only supports one
+ * producer at a time, but never wait for the reader unless the buffer is full.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:40
+ */
+public class RingPipeOutputStream extends OutputStream {
+	private static final int SPINS = 64;
+	private final RingPipeInputStream sink;
+	private final byte[] one = new byte[1];
+	/**
+	 * Last value of head seen by the writer. Avoids reading the reader's counter on every call.
+	 */
+	private long writerHead;
+	private SegmentPool.Segment writeSegment;
+	/**
+	 * Position of the first byte of writeSegment
+	 */
+	private long writeBase;
+
+	/**
+	 * Creates the writing end of a pipe
+	 * @param sink    The reading end. Can only be connected to one output stream.
+	 * @throws IOException	If the sink is already connected
+	 */
+	public RingPipeOutputStream(RingPipeInputStream sink) throws IOException {
+		synchronized (sink) {
+			if (sink.connected)
+				throw new IOException("Already connected");
+			sink.connected = true;
+			writeSegment = sink.first;
+			sink.first = null;
+		}
+		this.sink = sink;
+	}
+
+	@Override
+	public synchronized void write(int b) throws IOException {
+		one[0] = (byte) b;
+		write(one, 0, 1);
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off)
+			throw new IndexOutOfBoundsException();
+		int segmentSize = sink.segmentSize;
+		while (len > 0) {
+			long t = sink.tail.get();
+			int free = sink.capacity - (int) (t - writerHead);
+			// The cached head may be stale : read the real one before counting a stall
+			if (free == 0 && (free = sink.capacity - (int) (t - (writerHead = sink.head.get()))) == 0) {
+				awaitRoom(t);
+				continue;
+			}
+			if (sink.closedByReader || sink.closedByWriter)
+				throw new IOException("Pipe closed");
+			if (t - writeBase == segmentSize) {
+				SegmentPool.Segment next = sink.pool.acquire();
+				writeSegment.next = next;
+				writeSegment = next;
+				writeBase += segmentSize;
+			}
+			int index = (int) (t - writeBase), n = Math.min(Math.min(len, free), segmentSize - index);
+			System.arraycopy(b, off, writeSegment.data, index, n);
+			sink.tail.set(t + n);
+			if (sink.highWaterReset) {
+				sink.highWaterReset = false;
+				sink.highWater = t + n - sink.head.get();
+			} else if (t + n - writerHead > sink.highWater) { // Cached head : only an upper bound
+				long used = t + n - sink.head.get();
+				if (used > sink.highWater)
+					sink.highWater = used;
+			}
+			Thread reader = sink.parkedReader;
+			if (reader != null)
+				LockSupport.unpark(reader);
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Writes bytes only if they all fit in the buffer right now, without ever waiting for the reader.
+	 * @return	true if written, false if there wasn't enough room
+	 * @throws IOException	If the pipe is closed
+	 */
+	public synchronized boolean offer(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off)
+			throw new IndexOutOfBoundsException();
+		if (sink.closedByReader || sink.closedByWriter)
+			throw new IOException("Pipe closed");
+		long t = sink.tail.get();
+		if (t - writerHead + len > sink.capacity && t - (writerHead = sink.head.get()) + len > sink.capacity)
+			return false;
+		write(b, off, len);
+		return true;
+	}
+
+	/**
+	 * Waits until the reader makes room in the buffer, and updates the cached head.
+	 * @param t    Current write position
+	 * @throws IOException	If the pipe was closed, or if interrupted
+	 */
+	private void awaitRoom(long t) throws IOException {
+		long start = System.nanoTime();
+		sink.stallCount++;
+		try {
+			spinOrPark(t);
+		} finally {
+			sink.stallTime += System.nanoTime() - start;
+		}
+	}
+
+	private void spinOrPark(long t) throws IOException {
+		int size = sink.capacity;
+		for (int i = 0; i < SPINS; i++) {
+			if (t - (writerHead = sink.head.get()) < size)
+				return;
+			if (sink.closedByReader || sink.closedByWriter)
+				throw new IOException("Pipe closed");
+			if (i >= SPINS / 2)
+				Thread.yield();
+		}
+		Thread current = Thread.currentThread();
+		try {
+			while (true) {
+				sink.parkedWriter = current;
+				if (t - (writerHead = sink.head.get()) < size)
+					return;
+				if (sink.closedByReader || sink.closedByWriter)
+					throw new IOException("Pipe closed");
+				LockSupport.park(this);
+				if (Thread.interrupted())
+					throw new InterruptedIOException();
+			}
+		} finally {
+			sink.parkedWriter = null;
+		}
+	}
+
+	/**
+	 * Wakes up the reader, in case it is waiting. Data is visible to the reader as soon as it is written anyway.
+	 */
+	@Override
+	public void flush() {
+		Thread reader = sink.parkedReader;
+		if (reader != null)
+			LockSupport.unpark(reader);
+	}
+
+	/**
+	 * Closes the pipe : once it has read what remains in the buffer, the reader gets an end of stream.
+	 */
+	@Override
+	public void close() {
+		sink.closedByWriter = true;
+		flush();
+	}
+}
@@ -0,0 +1,64 @@
+package eu.neurovertex.io;
+
+/**
+ * Pool of fixed-size buffer segments, shared by the pipes so that a burst in one of them reuses the memory freed by
+ * another instead of allocating. Only a bounded number of idle segments is kept, the rest is left to the GC.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:43
+ */
+public class SegmentPool {
+	public static final int DEFAULT_SEGMENT_SIZE = 16384;
+	/**
+	 * Pool used by pipes that aren't given one : 16 KiB segments, up to 1 MiB kept idle
+	 */
+	public static final SegmentPool SHARED = new SegmentPool(DEFAULT_SEGMENT_SIZE, 64);
+	private final int segmentSize;
+	private final Segment[] idle;
+	private int idleCount;
+
+	/**
+	 * @param segmentSize    Size of each segment, in bytes
+	 * @param maxIdle        Maximum number of idle segments kept for reuse
+	 */
+	public SegmentPool(int segmentSize, int maxIdle) {
+		if (segmentSize <= 0)
+			throw new IllegalArgumentException("Segment size <= 0");
+		this.segmentSize = segmentSize;
+		idle = new Segment[maxIdle];
+	}
+
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	public synchronized int getIdleCount() {
+		return idleCount;
+	}
+
+	synchronized Segment acquire() {
+		if (idleCount == 0)
+			return new Segment(segmentSize);
+		Segment segment = idle[--idleCount];
+		idle[idleCount] = null;
+		return segment;
+	}
+
+	synchronized void release(Segment segment) {
+		segment.next = null;
+		if (idleCount < idle.length)
+			idle[idleCount++] = segment;
+	}
+
+	/**
+	 * Piece of a pipe's buffer. The segments of a pipe are linked from the one being read to the one being written.
+	 */
+	static class Segment {
+		final byte[] data;
+		volatile Segment next;
+
+		private Segment(int size) {
+			data = new byte[size];
+		}
+	}
+}
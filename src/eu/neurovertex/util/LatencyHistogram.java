@@ -0,0 +1,122 @@
+package eu.neurovertex.util;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size histogram of durations with log-linear buckets, after HdrHistogram : values below 32 have their own
+ * bucket, and every power of two above is split into 16 buckets, which keeps the relative error under ~6% over the
+ * whole range of a long. Recording is a couple of shifts and one atomic increment, without locks or allocation, and may
+ * be done from any number of threads.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:36
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 4, SUB_COUNT = 1 << SUB_BITS, LINEAR = SUB_COUNT * 2;
+	private static final int BUCKETS = LINEAR + (64 - SUB_BITS - 2) * SUB_COUNT;
+	private final String name;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong total = new AtomicLong(), sum = new AtomicLong(), max = new AtomicLong();
+
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Records a duration. Negative values are ignored.
+	 * @param nanos    Duration, in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			return;
+		counts.incrementAndGet(bucket(nanos));
+		total.incrementAndGet();
+		sum.addAndGet(nanos);
+		long m;
+		while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) ;
+	}
+
+	private static int bucket(long value) {
+		if (value < LINEAR)
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return LINEAR + (shift - 1) * SUB_COUNT + (int) (value >>> shift) - SUB_COUNT;
+	}
+
+	/**
+	 * @return	The smallest value that falls in a bucket
+	 */
+	private static long lowerBound(int bucket) {
+		if (bucket < LINEAR)
+			return bucket;
+		int shift = (bucket - LINEAR) / SUB_COUNT + 1;
+		return (long) ((bucket - LINEAR) % SUB_COUNT + SUB_COUNT) << shift;
+	}
+
+	public long getCount() {
+		return total.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getMean() {
+		long n = total.get();
+		return n == 0 ? 0 : sum.get() / n;
+	}
+
+	/**
+	 * Computes a percentile. Concurrent recordings may or may not be taken into account.
+	 * @param percentile    Percentile, between 0 and 100
+	 * @return	The lower bound of the bucket holding the percentile, in nanoseconds, or 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			n += counts.get(i);
+		long rank = (long) Math.ceil(n * percentile / 100), seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen > 0 && seen >= rank)
+				return lowerBound(i);
+		}
+		return 0;
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			counts.set(i, 0);
+		total.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * Writes the non-empty buckets, one per line : lower bound in nanoseconds, then count.
+	 * @param out    Writer to dump to
+	 */
+	public void dump(PrintWriter out) {
+		out.println("# " + this);
+		for (int i = 0; i < BUCKETS; i++) {
+			long count = counts.get(i);
+			if (count > 0)
+				out.println(lowerBound(i) + "\t" + count);
+		}
+	}
+
+	/**
+	 * @return	A one-line summary, in microseconds
+	 */
+	@Override
+	public String toString() {
+		return String.format("%s : %d samples, mean %dus, p50 %dus, p90 %dus, p99 %dus, max %dus", name, getCount(),
+				getMean() / 1000, getPercentile(50) / 1000, getPercentile(90) / 1000, getPercentile(99) / 1000, getMax() / 1000);
+	}
+}
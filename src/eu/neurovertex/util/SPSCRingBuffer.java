@@ -0,0 +1,153 @@
+package eu.neurovertex.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, preallocated single-producer/single-consumer queue. Exactly one thread may call the offer/put methods and
+ * exactly one (other) thread may call the poll/take methods; neither side takes a lock. Blocking methods spin for a
+ * short while, then park until the other side signals them.
+ * <p>
+ * Overflow policy is up to the producer : {@link #offer(Object)} fails immediately when the buffer is full, while
+ * {@link #put(Object)} waits for the consumer to make room (back-pressure).
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:19
+ */
+public class SPSCRingBuffer<E> {
+	private static final int SPINS = 128;
+	private final Object[] buffer;
+	private final int mask;
+	/**
+	 * head is the index of the next element to read, tail the index of the next element to write. Both only grow.
+	 */
+	private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+	/**
+	 * Last value of head seen by the producer, and of tail seen by the consumer. Avoids reading the other side's
+	 * counter on every call.
+	 */
+	private long producerHead, consumerTail;
+	private volatile Thread parkedProducer, parkedConsumer;
+
+	/**
+	 * Creates a ring buffer
+	 * @param capacity    Minimum capacity. Rounded up to the next power of two.
+	 */
+	public SPSCRingBuffer(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity <= 0");
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		buffer = new Object[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Inserts an element if there is room for it. Producer side only.
+	 * @param e    Element to insert
+	 * @return	true if inserted, false if the buffer was full
+	 */
+	public boolean offer(E e) {
+		if (e == null)
+			throw new NullPointerException();
+		long t = tail.get();
+		if (t - producerHead >= buffer.length) {
+			producerHead = head.get();
+			if (t - producerHead >= buffer.length)
+				return false;
+		}
+		buffer[(int) t & mask] = e;
+		tail.set(t + 1);
+		Thread consumer = parkedConsumer;
+		if (consumer != null)
+			LockSupport.unpark(consumer);
+		return true;
+	}
+
+	/**
+	 * Inserts an element, waiting for room if necessary. Producer side only.
+	 * @param e    Element to insert
+	 * @throws InterruptedException	If interrupted while waiting
+	 */
+	public void put(E e) throws InterruptedException {
+		for (int i = 0; i < SPINS; i++)
+			if (offer(e))
+				return;
+		Thread current = Thread.currentThread();
+		while (true) {
+			parkedProducer = current;
+			if (offer(e)) {
+				parkedProducer = null;
+				return;
+			}
+			LockSupport.park(this);
+			parkedProducer = null;
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (offer(e))
+				return;
+		}
+	}
+
+	/**
+	 * Removes the oldest element if there is one. Consumer side only.
+	 * @return	The element, or null if the buffer is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		long h = head.get();
+		if (h >= consumerTail) {
+			consumerTail = tail.get();
+			if (h >= consumerTail)
+				return null;
+		}
+		int index = (int) h & mask;
+		E e = (E) buffer[index];
+		buffer[index] = null;
+		head.set(h + 1);
+		Thread producer = parkedProducer;
+		if (producer != null)
+			LockSupport.unpark(producer);
+		return e;
+	}
+
+	/**
+	 * Removes the oldest element, waiting for one if necessary. Consumer side only.
+	 * @return	The element
+	 * @throws InterruptedException	If interrupted while waiting
+	 */
+	public E take() throws InterruptedException {
+		E e;
+		for (int i = 0; i < SPINS; i++)
+			if ((e = poll()) != null)
+				return e;
+		Thread current = Thread.currentThread();
+		while (true) {
+			parkedConsumer = current;
+			if ((e = poll()) != null) {
+				parkedConsumer = null;
+				return e;
+			}
+			LockSupport.park(this);
+			parkedConsumer = null;
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if ((e = poll()) != null)
+				return e;
+		}
+	}
+
+	/**
+	 * Number of elements currently in the buffer. Only a snapshot when called concurrently with either side.
+	 * @return	The size
+	 */
+	public int size() {
+		long h = head.get();
+		return (int) (tail.get() - h);
+	}
+
+	public int capacity() {
+		return buffer.length;
+	}
+}
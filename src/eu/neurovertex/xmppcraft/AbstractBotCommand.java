@@ -1,5 +1,6 @@
 package eu.neurovertex.xmppcraft;
 
+import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -76,8 +77,11 @@ public abstract class AbstractBotCommand implements ChatBot.BotCommand {
 	 * Convenience skeletal implementation of BotCommand. Implements a command matching a given regex.
 	 */
 	public abstract static class RegexBotCommand extends AbstractBotCommand {
-		private Pattern regex;
-		private Matcher lastMatcher;
+		private final Pattern regex;
+		/**
+		 * Each thread reuses its own matcher, so that commands can be matched from several threads at once
+		 */
+		private final ThreadLocal<Matcher> matcher = new ThreadLocal<>();
 
 		/**
 		 * Creates a RegexBotCommand matching the given regex
@@ -93,17 +97,22 @@ public abstract class AbstractBotCommand implements ChatBot.BotCommand {
 		}
 
 		/**
-		 * Allow implementing classes to obtain the last matcher, thus the one used by the current command execution.
-		 * Allows for capture groups to be extracted.
-		 * @return	The last matcher created
+		 * Allow implementing classes to obtain the last matcher used by the current thread, thus the one used by the
+		 * current command execution. Allows for capture groups to be extracted.
+		 * @return	The last matcher used
 		 */
 		protected Matcher getMatcher() {
-			return lastMatcher;
+			return matcher.get();
 		}
 
 		@Override
 		public boolean matches(String command) {
-			return (lastMatcher = regex.matcher(command)).matches();
+			Matcher m = matcher.get();
+			if (m == null)
+				matcher.set(m = regex.matcher(command));
+			else
+				m.reset(command);
+			return m.matches();
 		}
 	}
 
@@ -111,7 +120,7 @@ public abstract class AbstractBotCommand implements ChatBot.BotCommand {
 	 * Convenience skeletal implementation of BotCommand. Implements a command matching a given prefix.
 	 */
 	public abstract static class PrefixBotCommand extends AbstractBotCommand {
-		private String prefix;
+		private final String prefix;
 
 		/**
 		 * Creates a PrefixBotCommand matching the given prefix
@@ -123,12 +132,19 @@ public abstract class AbstractBotCommand implements ChatBot.BotCommand {
 		 */
 		PrefixBotCommand(String name, String category, int level, String syntax, String prefix) {
 			super(name, category, level, syntax);
-			this.prefix = prefix.toLowerCase();
+			this.prefix = prefix.toLowerCase(Locale.ROOT);
+		}
+
+		/**
+		 * @return	The prefix, in lower case
+		 */
+		public String getPrefix() {
+			return prefix;
 		}
 
 		@Override
 		public boolean matches(String command) {
-			return command.toLowerCase().startsWith(prefix);
+			return command.regionMatches(true, 0, prefix, 0, prefix.length());
 		}
 	}
 }
@@ -6,11 +6,14 @@ import org.jivesoftware.smack.packet.Packet;
 import org.jivesoftware.smackx.muc.MultiUserChat;
 
 import java.io.IOException;
-import java.io.PrintStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -26,26 +29,78 @@ import static eu.neurovertex.xmppcraft.UserRegistry.*;
  * @author Neurovertex
  *         Date: 13/09/2014, 13:45
  */
-public class ChatBot implements GameListener, PacketListener, ChatManagerListener, MessageListener {
-	private final PrintStream gameInput;
+public class ChatBot implements DeathListener, PacketListener, ChatManagerListener, MessageListener {
+	private final CommandQueue gameInput;
 	public static final Settings language = new Settings("lang.json", true);
 
 	private static final Logger log = Logger.getLogger(ChatBot.class.getName());
 	private final Roster roster;
+	/**
+	 * Merges mirrored chat lines that waited for the rate limit into as few 'say' commands as possible. It lives here,
+	 * next to the code writing those commands, rather than in CommandQueue : the queue is kept across updates, so it
+	 * stays unaware of command formats. {@link Tellraw#merger} is the counterpart for tellraw commands.
+	 */
+	private static final CommandQueue.Merger sayMerger = new CommandQueue.Merger() {
+		private static final int MAX_LENGTH = 256;
+
+		@Override
+		public List<String> merge(List<String> commands) {
+			List<String> merged = new ArrayList<>();
+			StringBuilder say = null;
+			for (String command : commands) {
+				if (say != null && (!command.startsWith("say ") || say.length() + command.length() > MAX_LENGTH)) {
+					merged.add(say.toString());
+					say = null;
+				}
+				if (!command.startsWith("say "))
+					merged.add(command);
+				else if (say == null)
+					say = new StringBuilder(command);
+				else
+					say.append(" | ").append(command, 4, command.length());
+			}
+			if (say != null)
+				merged.add(say.toString());
+			return merged;
+		}
+	};
+	/**
+	 * Lets through only the unrecognized log lines {@link #onLog(String)} acts upon.
+	 */
+	static final LogEvent.Filter logFilter = new LogEvent.Filter() {
+		@Override
+		public boolean accept(LogEvent event) {
+			return event.getType() != LogEvent.Type.LOG || event.getBody().startsWith("UUID of player ") || event.getBody().startsWith("Done");
+		}
+	};
 	private static Pattern commandPattern,
 			uuid = Pattern.compile("UUID of player ([^ ]+) is (.+)"),
 			charEscape = Pattern.compile("(?<!\\\\)[@§]");
-	private boolean mtxMirror, xtmMirror;
+	private boolean mtxMirror, xtmMirror, tellraw;
 	private long captureDelay = 1000;
+	private String captureSentinel, captureEcho;
+	private final AtomicLong captureCount = new AtomicLong();
+	/**
+	 * Reception time of the XMPP message being processed by the current thread, for {@link Latency.Stage#COMMAND}
+	 */
+	private final ThreadLocal<Long> packetTime = new ThreadLocal<>();
 	private int maxLen = 1024, maxLines = 16;
-	private Map<String, BotCommand> commands = new HashMap<>();
+	private final Map<String, BotCommand> commands = new LinkedHashMap<>();
+	/**
+	 * Rebuilt on each registration, and never modified afterwards, so that parseCommand can use it without locking
+	 */
+	private volatile CommandIndex commandIndex = new CommandIndex(commands.values());
 	private Map<UserRegistry.User, Chat> openChats = new HashMap<>();
 	private MultiUserChat muc;
 	private String JID;
 	private Exception lastException;
+	/**
+	 * Merges bursts of join/left, death and achievement notifications. Null if chatbot.coalesce.window is 0.
+	 */
+	private EventCoalescer coalescer;
 
 	ChatBot() throws SmackException, XMPPException {
-		this.gameInput = new PrintStream(Main.getInstance().getPipeToStdin());
+		this.gameInput = Main.getInstance().getCommandQueue();
 		roster = Main.getInstance().getXMPPManager().getConnection().getRoster();
 		UserCommands.init(this);
 		GameCommands.init(this);
@@ -64,9 +119,17 @@ public class ChatBot implements GameListener, PacketListener, ChatManagerListene
 		Settings settings = Main.getInstance().getSettings();
 		mtxMirror = "true".equalsIgnoreCase(settings.getString("chatbot.mirror.gametoxmpp"));
 		xtmMirror = "true".equalsIgnoreCase(settings.getString("chatbot.mirror.xmpptogame"));
+		tellraw = "true".equalsIgnoreCase(settings.getString("chatbot.tellraw", "true"));
+		gameInput.setChatMerger(tellraw ? Tellraw.merger : sayMerger);
 		maxLen = settings.getInteger("chatbot.maxlen");
 		maxLines = settings.getInteger("chatbot.maxlines");
 		captureDelay = settings.getInteger("chatbot.capturedelay");
+		captureSentinel = settings.getString("chatbot.capture.sentinel", "scoreboard players list %s");
+		captureEcho = settings.getString("chatbot.capture.echo", "Player %s has no scores recorded");
+		if (coalescer != null)
+			coalescer.close();
+		int window = settings.getInteger("chatbot.coalesce.window", 2000);
+		coalescer = window > 0 ? new EventCoalescer(this, window) : null;
 		this.muc = new MultiUserChat(Main.getInstance().getXMPPManager().getConnection(), settings.getString("xmpp.muc.jid"));
 		muc.addMessageListener(this);
 		muc.join(settings.getString("xmpp.muc.nick"));
@@ -76,47 +139,101 @@ public class ChatBot implements GameListener, PacketListener, ChatManagerListene
 	}
 
 	/**
-	 * Sends a command to Minecraft for execution, optionally capture command output.
+	 * Sends a command to Minecraft for execution, optionally capture command output. To know when the output is over,
+	 * a sentinel command (chatbot.capture.sentinel, a read-only command with a recognizable answer) is sent right after
+	 * the real one with a unique token, and the capture ends as soon as its answer (chatbot.capture.echo) shows up in
+	 * the log.
 	 * @param command The Minecraft command to execute
-	 * @param capture Whether the command output should be captured or not. If true, the command will block for {@link eu.neurovertex.xmppcraft.ChatBot#captureDelay} milliseconds (default 500ms)
+	 * @param capture Whether the command output should be captured or not. If true, the command will block until the
+	 *                sentinel answer is read, or for at most {@link eu.neurovertex.xmppcraft.ChatBot#captureDelay}
+	 *                milliseconds (default 1000ms)
 	 * @return The captured output, or null if false was specified, or if an exception happens.
-	 * @see eu.neurovertex.xmppcraft.LogParser#capture(long)
+	 * @see eu.neurovertex.xmppcraft.LogParser#startCapture(String)
 	 */
-	public java.util.List<String> gameCommand(String command, boolean capture) {
-		gameInput.println(command);
-		if (capture)
-			try {
-				return Main.getInstance().getLogParser().capture(captureDelay);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-				// Nothing should happen that would get us here
-				// In theory
-				// Maybe interruping the thread while it's capturing or something
-			}
+	public List<String> gameCommand(String command, boolean capture) {
+		if (!capture) {
+			gameInput.submit(CommandQueue.Priority.BOT, command);
+			recordCommandLatency();
+			return null;
+		}
+		boolean sentinel = captureSentinel != null && captureSentinel.length() > 0;
+		String token = LogParser.CAPTURE_TOKEN + captureCount.incrementAndGet();
+		LogParser.Capture output;
+		synchronized (gameInput) { // Sessions must be started in the same order as the commands are sent
+			output = Main.getInstance().getLogParser().startCapture(sentinel ? String.format(captureEcho, token) : null);
+			if (sentinel)
+				gameInput.submit(CommandQueue.Priority.BOT, command, String.format(captureSentinel, token));
+			else
+				gameInput.submit(CommandQueue.Priority.BOT, command);
+		}
+		recordCommandLatency();
+		try {
+			return output.await(captureDelay);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			// Nothing should happen that would get us here
+			// In theory
+			// Maybe interruping the thread while it's capturing or something
+		}
 		return null;
 	}
 
 	/**
-	 * Sends an in-game broadcast message ('say' command)
+	 * Records the time it took for an XMPP message to result in a command, if the current thread is processing one.
+	 * Only the first command is counted.
+	 */
+	private void recordCommandLatency() {
+		Long received = packetTime.get();
+		if (received != null) {
+			Latency.record(Latency.Stage.COMMAND, System.nanoTime() - received);
+			packetTime.remove();
+		}
+	}
+
+	/**
+	 * Sends an in-game broadcast message ('tellraw' command, or 'say' if chatbot.tellraw is false)
 	 * @param message    Message to broadcast
 	 */
 	public void gameMessage(String message) {
+		gameMessage(message, CommandQueue.Priority.BOT);
+	}
+
+	/**
+	 * Sends an in-game broadcast message : a single 'tellraw' command, or if chatbot.tellraw is false one 'say' command
+	 * per line, all submitted at once
+	 * @param message     Message to broadcast
+	 * @param priority    Priority of the commands. Chat mirrored from XMPP should use {@link CommandQueue.Priority#CHAT}
+	 */
+	public void gameMessage(String message, CommandQueue.Priority priority) {
 		log.finest("Sending message : " + message);
+		if (tellraw) {
+			if (message.length() > 0) {
+				gameInput.submit(priority, Tellraw.command(message));
+				recordCommandLatency();
+			}
+			return;
+		}
 		Matcher matcher = charEscape.matcher(message);
 		message = matcher.replaceAll("\\\\$0");
+		List<String> lines = new ArrayList<>();
 		for (String str : message.split("\n"))
 			if (str.length() > 0)
-				gameCommand("say " + str, false);
+				lines.add("say " + str);
+		if (!lines.isEmpty()) {
+			gameInput.submit(priority, lines.toArray(new String[lines.size()]));
+			recordCommandLatency();
+		}
 	}
 
 	/**
 	 * Registers a new command for the bot. No two commands with the same full name can be registered - the latter will
-	 * overwrite the former.
+	 * overwrite the former, keeping its priority.
 	 * @param command    The command to register.
 	 * @see eu.neurovertex.xmppcraft.ChatBot.BotCommand
 	 */
-	public void registerCommand(BotCommand command) {
+	public synchronized void registerCommand(BotCommand command) {
 		commands.put(command.getFullName(), command);
+		commandIndex = new CommandIndex(commands.values());
 	}
 
 	/**
@@ -458,27 +575,26 @@ public class ChatBot implements GameListener, PacketListener, ChatManagerListene
 				return new CommandResponse(language.getString("error.impersonation", "You really do think I'm stupider than you, don't you ?"));
 			}
 
-		for (BotCommand cmd : commands.values())
-			if (cmd.matches(command) && cmd.isEnabled()) {
-				if (level >= cmd.getLevel()) {
-					try {
-						return cmd.execute(this, user, command, source);
-					} catch (CommandSyntaxException e) {
-						log.log(Level.INFO, "Syntax error in command " + cmd.getName(), e);
-						return new CommandResponse("You messed up the syntax. You incapable. "+ e.getMessage() +"\n"+ cmd.getSyntax());
-					} catch (Exception e) {
-						lastException = e;
-						log.log((e instanceof CommandException) ? ((CommandException)e).getLogLevel() : Level.SEVERE, "Error while executing command", e);
-						return new CommandResponse("It seems something went wrong. Oh well, too bad.");
-					}
-				} else {
-					if (level >= 0)
-						return new CommandResponse(language.getString("error.privilege", String.format("Oh would you look at you, trying to play %s. Hilarious.", cmd.getLevel() > OP ? "admin" : "operator")));
-					else
-						return new CommandResponse(language.getString("error.anon", "... Who even are you ? Actually, I don't care."));
+		BotCommand cmd = commandIndex.find(command);
+		if (cmd != null) {
+			if (level >= cmd.getLevel()) {
+				try {
+					return cmd.execute(this, user, command, source);
+				} catch (CommandSyntaxException e) {
+					log.log(Level.INFO, "Syntax error in command " + cmd.getName(), e);
+					return new CommandResponse("You messed up the syntax. You incapable. "+ e.getMessage() +"\n"+ cmd.getSyntax());
+				} catch (Exception e) {
+					lastException = e;
+					log.log((e instanceof CommandException) ? ((CommandException)e).getLogLevel() : Level.SEVERE, "Error while executing command", e);
+					return new CommandResponse("It seems something went wrong. Oh well, too bad.");
 				}
-
+			} else {
+				if (level >= 0)
+					return new CommandResponse(language.getString("error.privilege", String.format("Oh would you look at you, trying to play %s. Hilarious.", cmd.getLevel() > OP ? "admin" : "operator")));
+				else
+					return new CommandResponse(language.getString("error.anon", "... Who even are you ? Actually, I don't care."));
 			}
+		}
 		return new CommandResponse(language.getString("general.unknown", "Do I have to underclock my processor to human level to understand this command ? I got nothing in my registry"));
 	}
 
@@ -493,7 +609,9 @@ public class ChatBot implements GameListener, PacketListener, ChatManagerListene
 		if (message.length() > maxLen)
 			message = message.substring(0, maxLen).concat(language.getString("error.maxlen", "... That's too long. I'm not gonna bother"));
 		try {
+			long start = System.nanoTime();
 			muc.sendMessage(message);
+			Latency.record(Latency.Stage.MUC, System.nanoTime() - start);
 		} catch (XMPPException | SmackException.NotConnectedException e) {
 			log.log(Level.SEVERE, "Error trying to send message", e);
 		}
@@ -527,7 +645,9 @@ public class ChatBot implements GameListener, PacketListener, ChatManagerListene
 		log.fine(String.format("'%s %s'", username, (joined ? "joined" : "left")));
 		String nickname = REGISTRY.gameToXMPP(username);
 		if (mtxMirror) {
-			mucMessage(String.format(joined ? language.getString("game.joined", "%s joined. How lucky.") : language.getString("game.left", "%s left. What a relief."), (nickname == null) ? username : String.format("%s (%s)", username, nickname)));
+			String name = (nickname == null) ? username : String.format("%s (%s)", username, nickname);
+			mirrorEvent(joined ? LogEvent.Type.JOINED : LogEvent.Type.LEFT, String.format(joined ? language.getString("game.joined", "%s joined. How lucky.") : language.getString("game.left", "%s left. What a relief."), name), name,
+					joined ? language.getString("game.joined.many", "%d players joined : %s. How lucky.") : language.getString("game.left.many", "%d players left : %s. What a relief."));
 		} else
 			log.finer("Event discarded");
 	}
@@ -572,7 +692,8 @@ public class ChatBot implements GameListener, PacketListener, ChatManagerListene
 		log.fine(String.format("'%s' earned '%s'", username, achievement));
 		String nick = REGISTRY.gameToXMPP(username);
 		if (mtxMirror)
-			mucMessage(String.format(language.getString("game.achievement", "%s just achieved [%s]. Should I get the cake ?"), nick == null ? username : nick, achievement));
+			mirrorEvent(LogEvent.Type.ACHIEVEMENT, String.format(language.getString("game.achievement", "%s just achieved [%s]. Should I get the cake ?"), nick == null ? username : nick, achievement),
+					String.format("%s [%s]", nick == null ? username : nick, achievement), language.getString("game.achievement.many", "%d achievements earned : %s. Should I get the cake ?"));
 	}
 
 	/**
@@ -582,9 +703,46 @@ public class ChatBot implements GameListener, PacketListener, ChatManagerListene
 	 */
 	@Override
 	public void onDeath(String username, String death) {
-		log.fine(String.format("%s died : %s", username, death));
-		if (mtxMirror)
-			mucMessage(String.format(language.getString("game.death", "%s %s. That's hilarious."), username, death));
+		onDeath(LogEvent.death(username, death, null, null, null));
+	}
+
+	/**
+	 * Mirrors (if {@link #mtxMirror}) death messages to XMPP and adds sass. Each kind of death may have its own message
+	 * in the language file, under "game." followed by the death's language key (game.death.attack.mob, ...), taking the
+	 * victim, killer and weapon. Players are named by their XMPP nickname when they have one. A message naming the killer
+	 * (%2$s) isn't used for a death without one, such as an arrow shot by a dispenser.
+	 * @param death    The death event
+	 */
+	@Override
+	public void onDeath(LogEvent death) {
+		String username = death.getUsername(), killer = death.getKiller();
+		log.fine(String.format("%s died : %s (%s, killer %s, item %s)", username, death.getBody(), death.getCause(), killer, death.getItem()));
+		if (!mtxMirror)
+			return;
+		String nick = REGISTRY.gameToXMPP(username), victim = nick == null ? username : nick;
+		if (killer != null && (nick = REGISTRY.gameToXMPP(killer)) != null)
+			killer = nick;
+		String format = death.getCause() != null ? language.getString("game." + death.getCause()) : null, message;
+		if (format != null && (killer != null || !format.contains("%2$s")))
+			message = String.format(format, victim, killer, death.getItem());
+		else
+			message = String.format(language.getString("game.death", "%s %s. That's hilarious."), victim, death.getBody());
+		mirrorEvent(LogEvent.Type.DEATH, message, victim + " " + death.getBody(),
+				language.getString("game.death.many", "%d deaths : %s. That's hilarious."));
+	}
+
+	/**
+	 * Sends a game event notification to the MUC, through the {@link EventCoalescer} if enabled.
+	 * @param type       Event type
+	 * @param message    Notification for this event alone
+	 * @param item       Short description of the event, for merged notifications
+	 * @param merged     Format of merged notifications (number of events, list of items)
+	 */
+	private void mirrorEvent(LogEvent.Type type, String message, String item, String merged) {
+		if (coalescer != null)
+			coalescer.post(type, message, item, merged);
+		else
+			mucMessage(message);
 	}
 
 	/**
@@ -606,16 +764,27 @@ public class ChatBot implements GameListener, PacketListener, ChatManagerListene
 	 */
 	@Override
 	public void onExit() {
+		if (coalescer != null)
+			coalescer.flush();
 		mucMessage(language.getString("general.leaving", "And believe me I am still alive."));
 		try {
 			Main.getInstance().getSettings().save();
 			REGISTRY.save();
 			language.save();
-			Main.getInstance().getXMPPManager().close();
+			if (!Main.isSidecar()) // In sidecar mode, the bot stays around for the next server start
+				Main.getInstance().getXMPPManager().close();
 		} catch (IOException ignore) {
 		}
 	}
 
+	/**
+	 * Releases the bot's resources once it is no longer used. Pending game events are still sent.
+	 */
+	public void close() {
+		if (coalescer != null)
+			coalescer.close();
+	}
+
 	/**
 	 * Return true. For future purposes.
 	 * @param input    input
@@ -635,35 +804,40 @@ public class ChatBot implements GameListener, PacketListener, ChatManagerListene
 	public void processPacket(Packet packet) {
 		if (packet.getFrom().equals(JID)) // Ignore messages from self
 			return;
-		if (packet.getExtension("x", "jabber:x:delay") != null) {
-			/*
-			THIS IS AN APPROXIMATE IMPLEMENTATION. On the test server, a backlog of 25 messages is set, thus the bot will
-			receive old messags upon joining a chatroom, which can cause havok if they contain commands. Sometimes, less
-			than 25 will be received for unknown reasons. There is no way to differenciate those from new messages from the
-			specs as far as I know, though I've noticed only those messages had a timestamp, so I'm ignoring any message
-			with this extension set.
-			This implementation is specific to the test server (runs Openfire), and MIGHT not work for yours.
-			 */
-			log.fine("Ignored packet, assuming timestamp means backlog : " + packet);
-		} else if (packet instanceof Message) {
-			Message m = (Message) packet;
-			String name = m.getFrom().split("/")[1];
-			Matcher matcher = commandPattern.matcher(m.getBody());
-			String gamename = REGISTRY.XMPPToGame(name);
-			if (matcher.matches()) {
-				CommandResponse result = parseCommand(matcher.group(1), name, Source.MUC);
-				if (result.resumeTransmission && xtmMirror)
-					gameMessage(String.format("<%s> %s", gamename == null ? name : gamename, m.getBody()));
-				if (result.text != null)
-					if (result.user != null)
-						tell(result.user, result.text, false);
-					else {
-						if (result.bothSides)
-							gameMessage(result.text);
-						mucMessage(result.text);
-					}
-			} else if (xtmMirror)
-				gameMessage(String.format("<%s> %s", gamename == null ? name : gamename, m.getBody()));
+		packetTime.set(System.nanoTime());
+		try {
+			if (packet.getExtension("x", "jabber:x:delay") != null) {
+				/*
+				THIS IS AN APPROXIMATE IMPLEMENTATION. On the test server, a backlog of 25 messages is set, thus the bot will
+				receive old messags upon joining a chatroom, which can cause havok if they contain commands. Sometimes, less
+				than 25 will be received for unknown reasons. There is no way to differenciate those from new messages from the
+				specs as far as I know, though I've noticed only those messages had a timestamp, so I'm ignoring any message
+				with this extension set.
+				This implementation is specific to the test server (runs Openfire), and MIGHT not work for yours.
+				 */
+				log.fine("Ignored packet, assuming timestamp means backlog : " + packet);
+			} else if (packet instanceof Message) {
+				Message m = (Message) packet;
+				String name = m.getFrom().split("/")[1];
+				Matcher matcher = commandPattern.matcher(m.getBody());
+				String gamename = REGISTRY.XMPPToGame(name);
+				if (matcher.matches()) {
+					CommandResponse result = parseCommand(matcher.group(1), name, Source.MUC);
+					if (result.resumeTransmission && xtmMirror)
+						gameMessage(String.format("<%s> %s", gamename == null ? name : gamename, m.getBody()), CommandQueue.Priority.CHAT);
+					if (result.text != null)
+						if (result.user != null)
+							tell(result.user, result.text, false);
+						else {
+							if (result.bothSides)
+								gameMessage(result.text);
+							mucMessage(result.text);
+						}
+				} else if (xtmMirror)
+					gameMessage(String.format("<%s> %s", gamename == null ? name : gamename, m.getBody()), CommandQueue.Priority.CHAT);
+			}
+		} finally {
+			packetTime.remove();
 		}
 	}
 
@@ -680,7 +854,13 @@ public class ChatBot implements GameListener, PacketListener, ChatManagerListene
 		Matcher matcher = commandPattern.matcher(command);
 		if (matcher.matches())
 			command = matcher.group(1);
-		CommandResponse response = parseCommand(command, message.getFrom(), Source.PM);
+		CommandResponse response;
+		packetTime.set(System.nanoTime());
+		try {
+			response = parseCommand(command, message.getFrom(), Source.PM);
+		} finally {
+			packetTime.remove();
+		}
 		if (response != null && response.text != null)
 			try {
 				chat.sendMessage(response.text);
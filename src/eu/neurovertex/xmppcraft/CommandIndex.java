@@ -0,0 +1,87 @@
+package eu.neurovertex.xmppcraft;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable dispatch index of the bot's commands, built once per registration rather than searched linearly on every
+ * message. Prefix commands are stored in a case-insensitive trie of their prefix, so that finding them costs as much as
+ * the length of the command rather than the number of commands. Other commands (regex-based or with their own
+ * matches()) can't be indexed and are tried in registration order.
+ * <p>
+ * Priority is deterministic : the prefix command with the longest matching prefix wins, then the other commands in
+ * registration order.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:51
+ */
+class CommandIndex {
+	private final Node root = new Node();
+	private final ChatBot.BotCommand[] scanned;
+
+	/**
+	 * @param commands    Registered commands, in registration order
+	 */
+	CommandIndex(Collection<ChatBot.BotCommand> commands) {
+		List<ChatBot.BotCommand> scan = new ArrayList<>();
+		for (ChatBot.BotCommand command : commands) {
+			if (command instanceof AbstractBotCommand.PrefixBotCommand) {
+				String prefix = ((AbstractBotCommand.PrefixBotCommand) command).getPrefix();
+				Node node = root;
+				for (int i = 0; i < prefix.length(); i++) {
+					Character c = Character.toLowerCase(prefix.charAt(i));
+					Node child = node.children.get(c);
+					if (child == null)
+						node.children.put(c, child = new Node());
+					node = child;
+				}
+				node.commands.add(command);
+			} else
+				scan.add(command);
+		}
+		scanned = scan.toArray(new ChatBot.BotCommand[scan.size()]);
+	}
+
+	/**
+	 * Finds the command a message is addressed to.
+	 * @param command    The message, without the bot's name
+	 * @return	The first enabled command matching, or null if there's none
+	 */
+	ChatBot.BotCommand find(String command) {
+		ChatBot.BotCommand cmd = find(root, command, 0);
+		if (cmd != null)
+			return cmd;
+		for (ChatBot.BotCommand c : scanned)
+			if (c.isEnabled() && c.matches(command))
+				return c;
+		return null;
+	}
+
+	/**
+	 * Walks down the trie as far as the command goes, then looks for an enabled command on the way back up, so that
+	 * longer prefixes are tried first.
+	 */
+	private static ChatBot.BotCommand find(Node node, String command, int depth) {
+		if (depth < command.length()) {
+			Node child = node.children.get(Character.toLowerCase(command.charAt(depth)));
+			if (child != null) {
+				ChatBot.BotCommand cmd = find(child, command, depth + 1);
+				if (cmd != null)
+					return cmd;
+			}
+		}
+		// matches() is still checked, in case a subclass narrows it down
+		for (ChatBot.BotCommand cmd : node.commands)
+			if (cmd.isEnabled() && cmd.matches(command))
+				return cmd;
+		return null;
+	}
+
+	private static class Node {
+		private final Map<Character, Node> children = new HashMap<>();
+		private final List<ChatBot.BotCommand> commands = new ArrayList<>(1);
+	}
+}
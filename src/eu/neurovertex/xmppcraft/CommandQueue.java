@@ -0,0 +1,274 @@
+package eu.neurovertex.xmppcraft;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Single way in to the server's console. Commands are submitted with a priority, and written by one thread, highest
+ * priority first and in submission order within a priority. Each submission is written with a single write, so the
+ * lines of a submission are never split up by another writer's.
+ * <p>
+ * Since every command runs on the server's main thread, commands that don't come from the console can be rate limited
+ * to a number of commands per tick. Console commands are never held back. Chat waiting for its turn is handed to a
+ * {@link Merger} as a whole, which can turn it into fewer commands.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:47
+ */
+public class CommandQueue implements Runnable, Closeable {
+	private static final Logger log = Logger.getLogger(CommandQueue.class.getName());
+	private static final String NEWLINE = System.lineSeparator();
+	private final OutputStream out;
+	private final ArrayDeque<Entry>[] queues;
+	private final int perTick;
+	private final long tick;
+	private Merger merger;
+	private Thread thread;
+	private boolean closed;
+	/**
+	 * Commands that may still be written in the current tick, negative if the last submission overdrew them
+	 */
+	private long tokens;
+	private long tickStart;
+	private volatile long written, merged, delayed;
+
+	/**
+	 * Creates a queue without rate limit
+	 * @param out    Stream to write the commands to
+	 */
+	public CommandQueue(OutputStream out) {
+		this(out, 0, 50);
+	}
+
+	/**
+	 * @param out        Stream to write the commands to
+	 * @param perTick    Maximum number of commands written per tick, console commands excluded. 0 for no limit.
+	 * @param tick       Length of a tick, in milliseconds
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public CommandQueue(OutputStream out, int perTick, long tick) {
+		this.out = out;
+		this.perTick = perTick;
+		this.tick = TimeUnit.MILLISECONDS.toNanos(tick);
+		tokens = perTick;
+		queues = new ArrayDeque[Priority.values().length];
+		for (int i = 0; i < queues.length; i++)
+			queues[i] = new ArrayDeque<>();
+	}
+
+	/**
+	 * Sets how chat commands waiting together are merged. Without a merger, they are written as they are.
+	 * @param merger    The merger, or null
+	 */
+	public synchronized void setChatMerger(Merger merger) {
+		this.merger = merger;
+	}
+
+	/**
+	 * Queues commands to be written together. Does nothing once closed.
+	 * @param priority    Priority of the commands
+	 * @param commands    Commands, one per line
+	 */
+	public void submit(Priority priority, String... commands) {
+		Entry entry = new Entry(commands);
+		synchronized (this) {
+			if (closed) {
+				log.warning("Command queue closed, dropped " + Arrays.toString(commands));
+				return;
+			}
+			queues[priority.ordinal()].add(entry);
+			notify();
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				Entry entry;
+				synchronized (this) {
+					while ((entry = next()) == null) {
+						if (closed && isEmpty())
+							break;
+						long wait = isEmpty() ? 0 : tickStart + tick - System.nanoTime();
+						if (isEmpty())
+							wait();
+						else if (wait > 0)
+							TimeUnit.NANOSECONDS.timedWait(this, wait);
+					}
+				}
+				if (entry == null)
+					break; // Closed and empty
+				StringBuilder sb = new StringBuilder();
+				for (String command : entry.commands)
+					sb.append(command).append(NEWLINE);
+				try {
+					out.write(sb.toString().getBytes(Charset.defaultCharset()));
+					out.flush();
+				} catch (IOException e) {
+					log.log(Level.SEVERE, "Couldn't write command to the server", e);
+				}
+				written++;
+				Latency.record(Latency.Stage.INJECT, System.nanoTime() - entry.submitted);
+			}
+		} catch (InterruptedException ignore) {
+		}
+		log.fine("Exitting CommandQueue thread");
+	}
+
+	private boolean isEmpty() {
+		for (ArrayDeque<Entry> queue : queues)
+			if (!queue.isEmpty())
+				return false;
+		return true;
+	}
+
+	/**
+	 * Takes the next entry to write, if the rate limit allows it.
+	 * @return	The entry, or null if there's none or it has to wait for the next tick
+	 */
+	private Entry next() {
+		if (!queues[Priority.CONSOLE.ordinal()].isEmpty())
+			return queues[Priority.CONSOLE.ordinal()].poll();
+		ArrayDeque<Entry> queue = queues[Priority.BOT.ordinal()];
+		if (queue.isEmpty() && (queue = queues[Priority.CHAT.ordinal()]).isEmpty())
+			return null;
+		if (queue == queues[Priority.CHAT.ordinal()] && queue.size() > 1)
+			mergeChat();
+		if (perTick > 0 && !closed) {
+			long now = System.nanoTime(), ticks = (now - tickStart) / tick;
+			if (ticks > 0) {
+				tokens = Math.min(perTick, tokens + ticks * perTick);
+				tickStart += ticks * tick;
+			}
+			// An entry larger than a whole tick's worth is let through on a fresh tick, and overdraws the next ones
+			int size = queue.peek().commands.length;
+			if (tokens < Math.min(size, perTick)) {
+				delayed++;
+				return null;
+			}
+			tokens -= size;
+		}
+		return queue.poll();
+	}
+
+	/**
+	 * Replaces the waiting chat entries with a single one
+	 */
+	private void mergeChat() {
+		ArrayDeque<Entry> queue = queues[Priority.CHAT.ordinal()];
+		List<String> commands = new ArrayList<>();
+		long submitted = queue.peek().submitted;
+		for (Entry entry : queue)
+			commands.addAll(Arrays.asList(entry.commands));
+		int count = queue.size();
+		if (merger != null)
+			commands = merger.merge(commands);
+		queue.clear();
+		queue.add(new Entry(commands.toArray(new String[commands.size()]), submitted));
+		merged += count - 1;
+	}
+
+	public synchronized void start() {
+		if (thread != null)
+			throw new IllegalStateException("Already started");
+		tickStart = System.nanoTime();
+		thread = new Thread(this);
+		thread.setDaemon(true);
+		thread.setName("Command queue");
+		thread.start();
+	}
+
+	/**
+	 * @return	Whether the queue was started and isn't closed
+	 */
+	public synchronized boolean isRunning() {
+		return thread != null && !closed;
+	}
+
+	public synchronized int getQueueSize(Priority priority) {
+		return queues[priority.ordinal()].size();
+	}
+
+	/**
+	 * @return	Number of submissions written so far, merged chat counting as one
+	 */
+	public long getWrittenCount() {
+		return written;
+	}
+
+	/**
+	 * @return	Number of chat submissions merged into another one
+	 */
+	public long getMergedCount() {
+		return merged;
+	}
+
+	/**
+	 * @return	Number of times the writer had to wait for the next tick
+	 */
+	public long getDelayedCount() {
+		return delayed;
+	}
+
+	/**
+	 * Stops accepting commands. Those already queued are still written, without rate limit.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		notify();
+	}
+
+	/**
+	 * Where commands come from, highest priority first
+	 */
+	public static enum Priority {
+		/**
+		 * Typed in the server's console. Never rate limited.
+		 */
+		CONSOLE,
+		/**
+		 * Sent by the bot, on its own or on a user's request
+		 */
+		BOT,
+		/**
+		 * Chat mirrored from XMPP
+		 */
+		CHAT
+	}
+
+	/**
+	 * Turns chat commands that waited together into as few commands as possible
+	 */
+	public static interface Merger {
+		/**
+		 * @param commands    Commands, in submission order
+		 * @return	The commands to write instead
+		 */
+		public List<String> merge(List<String> commands);
+	}
+
+	private static class Entry {
+		private final String[] commands;
+		private final long submitted;
+
+		private Entry(String[] commands) {
+			this(commands, System.nanoTime());
+		}
+
+		private Entry(String[] commands, long submitted) {
+			this.commands = commands;
+			this.submitted = submitted;
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package eu.neurovertex.xmppcraft;
+
+/**
+ * A {@link GameListener} receiving deaths as structured events, with the cause, killer and weapon read from the death
+ * message. The parser calls {@link #onDeath(LogEvent)} instead of {@link GameListener#onDeath(String, String)}.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 05:02
+ */
+public interface DeathListener extends GameListener {
+	/**
+	 * @param death    The death event
+	 * @see LogEvent#getCause()
+	 * @see LogEvent#getKiller()
+	 * @see LogEvent#getItem()
+	 */
+	public void onDeath(LogEvent death);
+}
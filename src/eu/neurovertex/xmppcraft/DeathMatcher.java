@@ -0,0 +1,332 @@
+package eu.neurovertex.xmppcraft;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Recognizes death messages, from the death.* entries of the game's language file ("%1$s was slain by %2$s using %3$s").
+ * Every template starts with the victim's name, which has no spaces, so the fixed fragment following it (" was slain
+ * by ") starts at the first space of the message. Those fragments are compiled into a trie, walked once from that space
+ * : every template whose fragment lies on the path is a candidate, tried from the longest fragment to the shortest. The
+ * rest of a candidate is then checked like a {@link LogFormat.Template}, which gives the killer (%2$s) and the item
+ * (%3$s).
+ * <p>
+ * A projectile without a shooter (an arrow from a dispenser, a snowball, ...) is named in place of the killer : "Bob was
+ * shot by arrow". The names of those projectiles are read from the entity.*.name entries of the same file, and give no
+ * killer.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:34
+ */
+public class DeathMatcher {
+	private static final Logger log = Logger.getLogger(DeathMatcher.class.getName());
+	public static final String DEFAULT_SOURCE = "assets/minecraft/lang/en_US.lang";
+	private static final Pattern argument = Pattern.compile("%(?:(\\d+)\\$)?s");
+	/**
+	 * Death messages of the vanilla 1.8 language file, used when the language file can't be found.
+	 */
+	private static final String[] FALLBACK = {
+			"death.fell.accident.ladder=%1$s fell off a ladder",
+			"death.fell.accident.vines=%1$s fell off some vines",
+			"death.fell.accident.water=%1$s fell out of the water",
+			"death.fell.accident.generic=%1$s fell from a high place",
+			"death.fell.killer=%1$s was doomed to fall",
+			"death.fell.assist=%1$s was doomed to fall by %2$s",
+			"death.fell.assist.item=%1$s was doomed to fall by %2$s using %3$s",
+			"death.fell.finish=%1$s fell too far and was finished by %2$s",
+			"death.fell.finish.item=%1$s fell too far and was finished by %2$s using %3$s",
+			"death.attack.inFire=%1$s went up in flames",
+			"death.attack.inFire.player=%1$s walked into fire whilst fighting %2$s",
+			"death.attack.onFire=%1$s burned to death",
+			"death.attack.onFire.player=%1$s was burnt to a crisp whilst fighting %2$s",
+			"death.attack.lava=%1$s tried to swim in lava",
+			"death.attack.lava.player=%1$s tried to swim in lava to escape %2$s",
+			"death.attack.lightningBolt=%1$s was struck by lightning",
+			"death.attack.inWall=%1$s suffocated in a wall",
+			"death.attack.drown=%1$s drowned",
+			"death.attack.drown.player=%1$s drowned whilst trying to escape %2$s",
+			"death.attack.starve=%1$s starved to death",
+			"death.attack.cactus=%1$s was pricked to death",
+			"death.attack.cactus.player=%1$s walked into a cactus whilst trying to escape %2$s",
+			"death.attack.generic=%1$s died",
+			"death.attack.explosion=%1$s blew up",
+			"death.attack.explosion.player=%1$s was blown up by %2$s",
+			"death.attack.magic=%1$s was killed by magic",
+			"death.attack.wither=%1$s withered away",
+			"death.attack.anvil=%1$s was squashed by a falling anvil",
+			"death.attack.fallingBlock=%1$s was squashed by a falling block",
+			"death.attack.mob=%1$s was slain by %2$s",
+			"death.attack.player=%1$s was slain by %2$s",
+			"death.attack.player.item=%1$s was slain by %2$s using %3$s",
+			"death.attack.arrow=%1$s was shot by %2$s",
+			"death.attack.arrow.item=%1$s was shot by %2$s using %3$s",
+			"death.attack.fireball=%1$s was fireballed by %2$s",
+			"death.attack.fireball.item=%1$s was fireballed by %2$s using %3$s",
+			"death.attack.thrown=%1$s was pummeled by %2$s",
+			"death.attack.thrown.item=%1$s was pummeled by %2$s using %3$s",
+			"death.attack.indirectMagic=%1$s was killed by %2$s using magic",
+			"death.attack.indirectMagic.item=%1$s was killed by %2$s using %3$s",
+			"death.attack.thorns=%1$s was killed trying to hurt %2$s",
+			"death.attack.fall=%1$s hit the ground too hard",
+			"death.attack.outOfWorld=%1$s fell out of the world",
+			"entity.Arrow.name=arrow",
+			"entity.Snowball.name=Snowball",
+			"entity.Fireball.name=Fireball",
+			"entity.SmallFireball.name=Small Fireball",
+			"entity.ThrownEnderpearl.name=Thrown Ender Pearl",
+			"entity.ThrownPotion.name=Potion",
+			"entity.WitherSkull.name=Wither Skull"
+	};
+	/**
+	 * Entities that can be named in place of the killer of an indirect death
+	 */
+	private static final List<String> PROJECTILES = Arrays.asList("Arrow", "Snowball", "Fireball", "SmallFireball",
+			"ThrownEnderpearl", "ThrownPotion", "ThrownEgg", "WitherSkull");
+	private static final Map<String, DeathMatcher> cache = new HashMap<>();
+
+	private final Node root = new Node();
+	private final int size;
+	private final Set<String> projectiles;
+
+	private DeathMatcher(Map<String, String> templates, Set<String> projectiles) {
+		this.projectiles = projectiles;
+		Set<String> seen = new HashSet<>();
+		int count = 0;
+		for (Map.Entry<String, String> entry : templates.entrySet()) {
+			if (!seen.add(entry.getValue()))
+				continue; // Same message as another cause (death.attack.mob and death.attack.player)
+			Death death = Death.compile(entry.getKey(), entry.getValue());
+			if (death == null) {
+				log.fine("Ignoring death message not starting with the victim : " + entry.getValue());
+				continue;
+			}
+			Node node = root;
+			for (int i = 0; i < death.fragment.length(); i++) {
+				char c = death.fragment.charAt(i);
+				Node next = node.children.get(c);
+				if (next == null)
+					node.children.put(c, next = new Node());
+				node = next;
+			}
+			node.deaths.add(death);
+			count++;
+		}
+		sortCandidates(root);
+		size = count;
+	}
+
+	/**
+	 * The more literal text a template has, the more specific it is : "%2$s using magic" must be tried before
+	 * "%2$s using %3$s".
+	 */
+	private static void sortCandidates(Node node) {
+		Collections.sort(node.deaths, new Comparator<Death>() {
+			@Override
+			public int compare(Death a, Death b) {
+				return b.literalLength - a.literalLength;
+			}
+		});
+		for (Node child : node.children.values())
+			sortCandidates(child);
+	}
+
+	/**
+	 * Loads death messages from a language file, looked up on the file system, then in the classpath. Matchers are
+	 * cached by source.
+	 * @param source    Path of the language file. If null or not found, the vanilla 1.8 messages are used.
+	 * @return	The matcher
+	 */
+	public static synchronized DeathMatcher load(String source) {
+		String key = String.valueOf(source);
+		DeathMatcher matcher = cache.get(key);
+		if (matcher == null) {
+			Map<String, String> templates = new LinkedHashMap<>();
+			Set<String> projectiles = new HashSet<>();
+			if (source != null)
+				try (InputStream in = open(source)) {
+					if (in != null) {
+						BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+						String line;
+						while ((line = reader.readLine()) != null)
+							addTemplate(line, templates, projectiles);
+					}
+				} catch (IOException e) {
+					log.warning("Couldn't read death messages from " + source + " : " + e);
+				}
+			if (templates.isEmpty()) {
+				log.fine("Using default death messages");
+				projectiles.clear();
+				for (String line : FALLBACK)
+					addTemplate(line, templates, projectiles);
+			}
+			cache.put(key, matcher = new DeathMatcher(templates, projectiles));
+		}
+		return matcher;
+	}
+
+	private static InputStream open(String source) throws IOException {
+		File file = new File(source);
+		if (file.isFile())
+			return new FileInputStream(file);
+		return DeathMatcher.class.getResourceAsStream("/" + source);
+	}
+
+	private static void addTemplate(String line, Map<String, String> templates, Set<String> projectiles) {
+		int eq = line.indexOf('=');
+		if (eq <= 0)
+			return;
+		String key = line.substring(0, eq);
+		if (key.startsWith("death."))
+			templates.put(key, line.substring(eq + 1).trim());
+		else if (key.startsWith("entity.") && key.endsWith(".name") && PROJECTILES.contains(key.substring(7, key.length() - 5)))
+			projectiles.add(line.substring(eq + 1).trim());
+	}
+
+	/**
+	 * @return	Number of distinct death messages
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Recognizes a death message.
+	 * @param body    Log message, without prefix
+	 * @return	The death event, or null if this isn't a death message
+	 */
+	public LogEvent match(String body) {
+		int space = body.indexOf(' ');
+		if (space <= 0)
+			return null;
+		return walk(root, body, space, space, null);
+	}
+
+	/**
+	 * @param killer    Name in the killer's place in a death message
+	 * @return	The killer, or null if that's the name of a projectile, which had no shooter
+	 */
+	private String killer(String killer) {
+		return killer != null && projectiles.contains(killer) ? null : killer;
+	}
+
+	/**
+	 * Walks the trie as far as the message allows, then tries the candidates from the deepest node up.
+	 * @param node      Current node
+	 * @param body      Log message
+	 * @param space     Index of the first space, where the victim's name ends
+	 * @param i         Index of the next character to match
+	 * @param values    Holder for the arguments, allocated when the first candidate is found
+	 * @return	The death event, or null
+	 */
+	private LogEvent walk(Node node, String body, int space, int i, String[] values) {
+		if (i < body.length()) {
+			Node next = node.children.get(body.charAt(i));
+			if (next != null) {
+				if (!next.deaths.isEmpty() && values == null)
+					values = new String[3];
+				LogEvent event = walk(next, body, space, i + 1, values);
+				if (event != null)
+					return event;
+			}
+		}
+		for (Death death : node.deaths)
+			if (death.match(body, i, values))
+				return LogEvent.death(body.substring(0, space), body.substring(space + 1), death.cause, killer(values[1]), values[2]);
+		return null;
+	}
+
+	private static class Node {
+		private final Map<Character, Node> children = new HashMap<>(4);
+		private final List<Death> deaths = new ArrayList<>(1);
+	}
+
+	/**
+	 * A compiled death message : the victim, a fixed fragment, then alternating arguments and fragments.
+	 */
+	private static class Death {
+		private final String cause, fragment;
+		/**
+		 * Argument numbers (1 for the killer, 2 for the item) and the fragment following each argument
+		 */
+		private final int[] arguments;
+		private final String[] literals;
+		private final int literalLength;
+
+		private Death(String cause, String fragment, int[] arguments, String[] literals) {
+			this.cause = cause;
+			this.fragment = fragment;
+			this.arguments = arguments;
+			this.literals = literals;
+			int length = fragment.length();
+			for (String literal : literals)
+				length += literal.length();
+			literalLength = length;
+		}
+
+		/**
+		 * @return	The compiled message, or null if it doesn't start with the victim followed by a space
+		 */
+		private static Death compile(String cause, String template) {
+			Matcher m = argument.matcher(template);
+			if (!m.find() || m.start() != 0 || (m.group(1) != null && !m.group(1).equals("1")))
+				return null;
+			int end = m.end(), sequential = 1;
+			List<Integer> arguments = new ArrayList<>();
+			List<String> literals = new ArrayList<>();
+			String fragment = null;
+			while (m.find()) {
+				String literal = template.substring(end, m.start());
+				if (fragment == null)
+					fragment = literal;
+				else if (literal.isEmpty())
+					return null; // Two adjacent arguments can't be told apart
+				else
+					literals.add(literal);
+				arguments.add((m.group(1) != null ? Integer.parseInt(m.group(1)) : ++sequential) - 1);
+				end = m.end();
+			}
+			String literal = template.substring(end);
+			if (fragment == null)
+				fragment = literal;
+			else
+				literals.add(literal);
+			if (!fragment.startsWith(" "))
+				return null;
+			int[] args = new int[arguments.size()];
+			for (int i = 0; i < args.length; i++)
+				args[i] = arguments.get(i);
+			return new Death(cause, fragment, args, literals.toArray(new String[literals.size()]));
+		}
+
+		/**
+		 * Matches the arguments after the fragment. The last fragment is anchored at the end of the message, the
+		 * others are found from left to right. Arguments can't be empty.
+		 * @param body      Log message
+		 * @param from      End of the fixed fragment in the message
+		 * @param values    Receives the arguments, by number
+		 * @return	true if the message matches
+		 */
+		private boolean match(String body, int from, String[] values) {
+			if (arguments.length == 0)
+				return from == body.length();
+			String last = literals[literals.length - 1];
+			int end = body.length() - last.length();
+			if (end <= from || !body.startsWith(last, end))
+				return false;
+			values[1] = values[2] = null;
+			for (int i = 0; i < arguments.length; i++) {
+				int stop = i == arguments.length - 1 ? end : body.indexOf(literals[i], from + 1);
+				if (stop <= from || stop > end)
+					return false;
+				if (arguments[i] < values.length)
+					values[arguments[i]] = body.substring(from, stop);
+				from = stop + literals[i].length();
+			}
+			return true;
+		}
+	}
+}
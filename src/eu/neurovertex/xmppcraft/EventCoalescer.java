@@ -0,0 +1,124 @@
+package eu.neurovertex.xmppcraft;
+
+import com.google.common.base.Joiner;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges bursts of game events of the same type (joins, deaths, ...) into a single MUC message, so that a server
+ * restart doesn't translate into a hundred stanzas. An event arriving after a quiet period is sent right away; any event
+ * of the same type following it within the window is held back, and all of them are sent together when the window
+ * ends.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:27
+ */
+class EventCoalescer {
+	private final ChatBot bot;
+	private final long window;
+	private final Map<LogEvent.Type, Batch> batches = new EnumMap<>(LogEvent.Type.class);
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "MUC Event Coalescer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	/**
+	 * Set once closed, under the lock of {@link #batches} : events are then sent right away rather than scheduled
+	 */
+	private boolean closed;
+
+	/**
+	 * Creates an EventCoalescer
+	 * @param bot       Bot to send the messages with
+	 * @param window    Minimum delay between two messages for the same event type, in milliseconds
+	 */
+	EventCoalescer(ChatBot bot, long window) {
+		this.bot = bot;
+		this.window = window;
+	}
+
+	/**
+	 * Sends or holds back an event.
+	 * @param type       Event type, events are only merged with events of the same type
+	 * @param message    Message to send if the event ends up alone
+	 * @param item       Short description of the event, to be listed in a merged message
+	 * @param merged     Format of merged messages, taking the number of events and the list of items
+	 */
+	public void post(LogEvent.Type type, String message, String item, String merged) {
+		String send = null;
+		synchronized (batches) {
+			Batch batch = batches.get(type);
+			if (batch == null)
+				batches.put(type, batch = new Batch());
+			long now = System.nanoTime();
+			if (closed || batch.messages.isEmpty() && now - batch.lastSent >= TimeUnit.MILLISECONDS.toNanos(window)) {
+				batch.lastSent = now;
+				send = message;
+			} else {
+				if (batch.messages.isEmpty())
+					timer.schedule(batch, Math.max(0, window - TimeUnit.NANOSECONDS.toMillis(now - batch.lastSent)), TimeUnit.MILLISECONDS);
+				batch.messages.add(message);
+				batch.items.add(item);
+				batch.format = merged;
+			}
+		}
+		if (send != null)
+			bot.mucMessage(send);
+	}
+
+	/**
+	 * Sends every pending event immediately.
+	 */
+	public void flush() {
+		List<Batch> pending;
+		synchronized (batches) {
+			pending = new ArrayList<>(batches.values());
+		}
+		for (Batch batch : pending)
+			batch.run();
+	}
+
+	/**
+	 * Sends pending events and stops the timer thread. Events posted afterwards are sent without merging.
+	 */
+	public void close() {
+		synchronized (batches) {
+			closed = true;
+		}
+		flush();
+		timer.shutdownNow();
+	}
+
+	private class Batch implements Runnable {
+		private final List<String> messages = new ArrayList<>(), items = new ArrayList<>();
+		private String format;
+		private long lastSent = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+
+		@Override
+		public void run() {
+			String message;
+			synchronized (batches) {
+				if (messages.isEmpty())
+					return;
+				if (messages.size() == 1)
+					message = messages.get(0);
+				else
+					message = String.format(format, items.size(), Joiner.on(", ").join(items));
+				messages.clear();
+				items.clear();
+				lastSent = System.nanoTime();
+			}
+			bot.mucMessage(message);
+		}
+	}
+}
@@ -2,6 +2,8 @@ package eu.neurovertex.xmppcraft;
 
 import com.google.common.base.Joiner;
 import com.sun.istack.internal.NotNull;
+import eu.neurovertex.io.NonBlockingPipeOutputStream;
+import eu.neurovertex.io.PipeStats;
 import eu.neurovertex.xmppcraft.nbtparser.NBTParser;
 import eu.neurovertex.xmppcraft.nbtparser.NBTPath;
 import eu.neurovertex.xmppcraft.nbtparser.PlayerData;
@@ -95,6 +97,81 @@ public final class GameCommands {
 			}
 		});
 
+		bot.registerCommand(new AbstractBotCommand.PrefixBotCommand("logformat", category, ADMIN, "logformat [profile]", "logformat") {
+			@Override
+			public ChatBot.CommandResponse execute(ChatBot bot, UserRegistry.User issuer, String command, ChatBot.Source source) {
+				String parts[] = command.split(" ");
+				Settings settings = Main.getInstance().getSettings();
+				String name = parts.length > 1 && parts[1].length() > 0 ? parts[1] : settings.getString("logparser.format", LogFormat.DEFAULT_NAME);
+				LogFormat format;
+				try {
+					format = LogFormat.fromSettings(settings, name);
+				} catch (IllegalArgumentException e) {
+					return new ChatBot.CommandResponse(e.getMessage());
+				}
+				settings.put("logparser.format", name);
+				Main.getInstance().getLogParser().setFormat(format);
+				return new ChatBot.CommandResponse("Now parsing the log as " + format.getName());
+			}
+		}.setHelp("Recompiles the log format profile from the settings, optionally switching to another one"));
+
+		bot.registerCommand(new AbstractBotCommand.PrefixBotCommand("parserstats", category, OP, "parserstats", "parserstats") {
+			@Override
+			public ChatBot.CommandResponse execute(ChatBot bot, UserRegistry.User issuer, String command, ChatBot.Source source) {
+				LogParser parser = Main.getInstance().getLogParser();
+				StringBuilder sb = new StringBuilder(String.format("Read %d events, dropped %d log lines, folded %d repeats, %d listener errors. Queue : %d/%d",
+						parser.getReadCount(), parser.getDroppedCount(), parser.getFoldedCount(), parser.getListenerErrors(), parser.getQueueSize(), parser.getQueueCapacity()));
+				for (LogParser.Subscription sub : parser.getSubscriptions())
+					sb.append(String.format("\n%s : %d dispatched, %d queued, %d dropped, %d stalls, %d errors, busy %dms (max %dms)",
+							sub.getListener().getClass().getSimpleName(), sub.getDispatchedCount(), sub.getQueueSize(), sub.getDroppedCount(),
+							sub.getStallCount(), sub.getErrorCount(), sub.getBusyTime() / 1000000, sub.getMaxTime() / 1000000));
+				NonBlockingPipeOutputStream tee = Main.getStdoutTee();
+				if (tee != null)
+					sb.append(String.format("\nServer output : %d lines (%d bytes) dropped, %d bytes spilled, %d bytes in spill file",
+							tee.getDroppedLines(), tee.getDroppedBytes(), tee.getSpilledBytes(), tee.getSpillSize()));
+				return new ChatBot.CommandResponse(sb.toString());
+			}
+		}.setHelp("Displays the log parser's counters"));
+
+		bot.registerCommand(new AbstractBotCommand.PrefixBotCommand("pipestats", category, OP, "pipestats [reset]", "pipestats") {
+			@Override
+			public ChatBot.CommandResponse execute(ChatBot bot, UserRegistry.User issuer, String command, ChatBot.Source source) {
+				boolean reset = command.equalsIgnoreCase("pipestats reset");
+				if (!reset && !command.equalsIgnoreCase("pipestats"))
+					throw new ChatBot.CommandSyntaxException();
+				CommandQueue queue = Main.getInstance().getCommandQueue();
+				StringBuilder sb = new StringBuilder(String.format("Command queue : %d console, %d bot, %d chat queued, %d written, %d chat merged, %d rate limit waits",
+						queue.getQueueSize(CommandQueue.Priority.CONSOLE), queue.getQueueSize(CommandQueue.Priority.BOT),
+						queue.getQueueSize(CommandQueue.Priority.CHAT), queue.getWrittenCount(), queue.getMergedCount(), queue.getDelayedCount()));
+				for (PipeStats pipe : PipeStats.getAll()) {
+					if (reset)
+						pipe.resetHighWaterMark();
+					sb.append('\n').append(pipe);
+				}
+				return new ChatBot.CommandResponse(sb.toString());
+			}
+		}.setHelp("Displays the command queue and the occupancy and stalls of the pipes to and from the server. reset resets the high-water marks."));
+
+		bot.registerCommand(new AbstractBotCommand.PrefixBotCommand("latency", category, OP, "latency [reset|dump]", "latency") {
+			@Override
+			public ChatBot.CommandResponse execute(ChatBot bot, UserRegistry.User issuer, String command, ChatBot.Source source) {
+				String parts[] = command.split(" ");
+				if (parts.length == 1)
+					return new ChatBot.CommandResponse(Latency.summary());
+				if (parts[1].equalsIgnoreCase("reset")) {
+					Latency.reset();
+					return new ChatBot.CommandResponse("Latency histograms reset");
+				}
+				if (!parts[1].equalsIgnoreCase("dump") || parts.length != 2)
+					throw new ChatBot.CommandSyntaxException();
+				try {
+					return new ChatBot.CommandResponse("Latency histograms written to " + Latency.dump());
+				} catch (IOException e) {
+					throw new ChatBot.CommandException("Couldn't write the latency histograms", e, Level.WARNING);
+				}
+			}
+		}.setHelp("Displays the latency of each stage of the bridge, from the log to XMPP and back. dump writes the histograms to a file in the logs directory."));
+
 		bot.registerCommand(new AbstractBotCommand.PrefixBotCommand("getnbt", category, OP, "getnbt <level|#<user>>", "getnbt ") {
 			@Override
 			public ChatBot.CommandResponse execute(ChatBot bot, UserRegistry.User issuer, String command, ChatBot.Source source) {
@@ -0,0 +1,119 @@
+package eu.neurovertex.xmppcraft;
+
+import eu.neurovertex.util.LatencyHistogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Latency histograms of each stage of the bridge, from the server log to XMPP and back.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:36
+ */
+public class Latency {
+	private static final long DAY = 24 * 3600 * 1000;
+	private static final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+	static {
+		for (Stage stage : Stage.values())
+			histograms[stage.ordinal()] = new LatencyHistogram(stage.description);
+	}
+
+	private Latency() {
+	}
+
+	public static void record(Stage stage, long nanos) {
+		histograms[stage.ordinal()].record(nanos);
+	}
+
+	public static LatencyHistogram get(Stage stage) {
+		return histograms[stage.ordinal()];
+	}
+
+	/**
+	 * Records how far behind the server log the bridge is.
+	 * @param gameTime    Time of day printed in the log line, in milliseconds, or -1 if unknown
+	 */
+	static void recordLag(int gameTime) {
+		if (gameTime < 0)
+			return;
+		long now = System.currentTimeMillis();
+		long lag = ((now + TimeZone.getDefault().getOffset(now)) % DAY - gameTime + DAY) % DAY;
+		if (lag < DAY / 2) // Otherwise, the line is from an old log or the clocks disagree
+			record(Stage.LAG, lag * 1000000);
+	}
+
+	public static void reset() {
+		for (LatencyHistogram histogram : histograms)
+			histogram.reset();
+	}
+
+	/**
+	 * @return	One summary line per stage
+	 */
+	public static String summary() {
+		StringBuilder sb = new StringBuilder();
+		for (LatencyHistogram histogram : histograms) {
+			if (sb.length() > 0)
+				sb.append('\n');
+			sb.append(histogram);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes every histogram to a new file in the logs directory, named after the current time
+	 * (logs/latency-yyyyMMdd-HHmmss.txt).
+	 * @return	The file written
+	 * @throws IOException	If the file can't be written
+	 */
+	public static File dump() throws IOException {
+		File file = new File("logs", String.format("latency-%1$tY%1$tm%1$td-%1$tH%1$tM%1$tS.txt", new Date()));
+		if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs())
+			throw new IOException("Couldn't create " + file.getParentFile());
+		try (PrintWriter out = new PrintWriter(file)) {
+			for (LatencyHistogram histogram : histograms)
+				histogram.dump(out);
+		}
+		return file;
+	}
+
+	public static enum Stage {
+		/**
+		 * Time spent framing and decoding a line, not counting the time spent waiting for data
+		 */
+		READ("Read"),
+		CLASSIFY("Classification"),
+		/**
+		 * Time between the timestamp of a line and its reading. Only has a one second resolution.
+		 */
+		LAG("Log lag"),
+		/**
+		 * Time between reading a line and the event being taken from the parser's queue
+		 */
+		QUEUE("Parser queue"),
+		/**
+		 * Time between reading a line and a listener being done with the event, for each listener
+		 */
+		DISPATCH("Dispatch"),
+		MUC("MUC send"),
+		/**
+		 * Time between receiving an XMPP message and the resulting command being written to the server
+		 */
+		COMMAND("XMPP to game"),
+		/**
+		 * Time between a command being submitted to the {@link CommandQueue} and it being written to the server
+		 */
+		INJECT("Command queue");
+
+		private final String description;
+
+		Stage(String description) {
+			this.description = description;
+		}
+	}
+}
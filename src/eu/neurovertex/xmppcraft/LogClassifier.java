@@ -0,0 +1,105 @@
+package eu.neurovertex.xmppcraft;
+
+import eu.neurovertex.io.LineFramer;
+
+/**
+ * Turns raw log lines into {@link LogEvent}s, according to a {@link LogFormat}. The line prefix is parsed once, then
+ * the body is only checked against the templates that can apply given its first character (or for templates starting
+ * with the player name, the first character after the name), instead of trying every pattern in turn. As a
+ * {@link LineFramer.Filter}, it rejects lines that don't have the right prefix and level before they are even decoded.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:18
+ */
+public class LogClassifier implements LineFramer.Filter {
+	private final LogFormat format;
+	private final int chatName, chatMessage, joinedName, leftName, achievementName, achievementValue;
+	private final Key chatKey, exitKey, joinedKey, leftKey, achievementKey;
+	/**
+	 * Field values of the template being matched. A classifier is only used by the parser's reader thread.
+	 */
+	private final String[] values;
+
+	public LogClassifier() {
+		this(LogFormat.VANILLA);
+	}
+
+	public LogClassifier(LogFormat format) {
+		this.format = format;
+		chatName = format.chat.require("name");
+		chatMessage = format.chat.require("message");
+		joinedName = format.joined.require("name");
+		leftName = format.left.require("name");
+		achievementName = format.achievement.require("name");
+		achievementValue = format.achievement.require("achievement");
+		values = new String[Math.max(Math.max(format.chat.fieldCount(), format.joined.fieldCount()),
+				Math.max(format.left.fieldCount(), format.achievement.fieldCount()))];
+		chatKey = new Key(format.chat);
+		exitKey = new Key(format.exit);
+		joinedKey = new Key(format.joined);
+		leftKey = new Key(format.left);
+		achievementKey = new Key(format.achievement);
+	}
+
+	public LogFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Classifies a line.
+	 * @param line    Raw line, as read from the server output
+	 * @return	The corresponding event, or null if the line doesn't have the right prefix or level
+	 */
+	public LogEvent classify(String line) {
+		int start = format.parsePrefix(line);
+		if (start < 0)
+			return null;
+		String body = line.substring(start);
+		if (body.length() == 0)
+			return new LogEvent(LogEvent.Type.LOG, null, body);
+		int first = body.charAt(0), space = body.indexOf(' '),
+				afterSpace = space >= 0 && space + 1 < body.length() ? body.charAt(space + 1) : -1;
+
+		if (chatKey.matches(first, afterSpace) && format.chat.match(body, 0, values))
+			return new LogEvent(LogEvent.Type.MESSAGE, values[chatName], values[chatMessage]);
+		if (exitKey.matches(first, afterSpace) && format.exit.match(body, 0, values))
+			return new LogEvent(LogEvent.Type.EXIT, null, null);
+		if (joinedKey.matches(first, afterSpace) && format.joined.match(body, 0, values))
+			return new LogEvent(LogEvent.Type.JOINED, values[joinedName], null);
+		if (leftKey.matches(first, afterSpace) && format.left.match(body, 0, values))
+			return new LogEvent(LogEvent.Type.LEFT, values[leftName], null);
+		if (achievementKey.matches(first, afterSpace) && format.achievement.match(body, 0, values))
+			return new LogEvent(LogEvent.Type.ACHIEVEMENT, values[achievementName], values[achievementValue]);
+
+		LogEvent death = format.deaths.match(body);
+		return death != null ? death : new LogEvent(LogEvent.Type.LOG, null, body);
+	}
+
+
+	/**
+	 * Byte-level equivalent of the prefix check in {@link #classify(String)}. Also strips colour codes if the format
+	 * requires it.
+	 */
+	@Override
+	public int accept(byte[] buffer, int off, int len) {
+		return format.accept(buffer, off, len);
+	}
+
+	/**
+	 * Character a line must have for a template to match, at the start of the line or after its first space.
+	 * @see LogFormat.Template#keyChar()
+	 */
+	private static class Key {
+		private final int c;
+		private final boolean afterSpace;
+
+		private Key(LogFormat.Template template) {
+			c = template.keyChar();
+			afterSpace = template.keyAfterSpace();
+		}
+
+		private boolean matches(int first, int afterSpace) {
+			return c < 0 || c == (this.afterSpace ? afterSpace : first);
+		}
+	}
+}
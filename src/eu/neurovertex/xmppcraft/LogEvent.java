@@ -0,0 +1,160 @@
+package eu.neurovertex.xmppcraft;
+
+/**
+ * A classified line of the server log, as produced by {@link LogClassifier}.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:18
+ */
+public class LogEvent {
+	private final Type type;
+	private final String username, body;
+	private final int repeats;
+	private final String cause, killer, item;
+	/**
+	 * Set by the parser before the event is queued, then only read.
+	 */
+	private int gameTime = -1;
+	private long ingestTime;
+
+	public LogEvent(Type type, String username, String body) {
+		this(type, username, body, 0);
+	}
+
+	/**
+	 * Creates an event summarizing repeated lines
+	 * @param type        Event type
+	 * @param username    Player name
+	 * @param body        Event content
+	 * @param repeats     Number of occurrences folded into this event, that weren't dispatched themselves
+	 * @see RepeatFilter
+	 */
+	public LogEvent(Type type, String username, String body, int repeats) {
+		this(type, username, body, repeats, null, null, null);
+	}
+
+	private LogEvent(Type type, String username, String body, int repeats, String cause, String killer, String item) {
+		this.type = type;
+		this.username = username;
+		this.body = body;
+		this.repeats = repeats;
+		this.cause = cause;
+		this.killer = killer;
+		this.item = item;
+	}
+
+	/**
+	 * Creates a death event
+	 * @param victim    Name of the player who died
+	 * @param body      Death message, without the player name
+	 * @param cause     Key of the message in the language file, like death.attack.mob
+	 * @param killer    Name of the killer, or null
+	 * @param item      Name of the weapon, or null
+	 * @return	The event
+	 * @see DeathMatcher
+	 */
+	public static LogEvent death(String victim, String body, String cause, String killer, String item) {
+		return new LogEvent(Type.DEATH, victim, body, 0, cause, killer, item);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * In-game name of the player the event is about. Null for {@link Type#LOG} and {@link Type#EXIT}.
+	 * @return	The player name
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * Type-dependant content : the chat message, the achievement name, the death message (without the player name) or
+	 * the whole log message for {@link Type#LOG}. Null for join/left and exit events.
+	 * @return	The event content
+	 */
+	public String getBody() {
+		return body;
+	}
+
+	/**
+	 * Number of identical lines this event stands for, besides the one that was dispatched when they started. 0 for
+	 * regular events.
+	 * @return	The number of folded lines
+	 */
+	public int getRepeats() {
+		return repeats;
+	}
+
+	/**
+	 * @return	The language key of the death message (death.attack.mob, ...), or null if not a death
+	 */
+	public String getCause() {
+		return cause;
+	}
+
+	/**
+	 * @return	The player or mob who caused the death, or null
+	 */
+	public String getKiller() {
+		return killer;
+	}
+
+	/**
+	 * @return	The item the killer used, or null
+	 */
+	public String getItem() {
+		return item;
+	}
+
+	/**
+	 * Sets the timing information of the event.
+	 * @param gameTime      Time of day printed in the log line, in milliseconds, or -1
+	 * @param ingestTime    When the line was read, from {@link System#nanoTime()}
+	 */
+	void stamp(int gameTime, long ingestTime) {
+		this.gameTime = gameTime;
+		this.ingestTime = ingestTime;
+	}
+
+	/**
+	 * @return	Time of day printed in the log line, in milliseconds since midnight, or -1 if unknown
+	 */
+	public int getGameTime() {
+		return gameTime;
+	}
+
+	/**
+	 * @return	When the line was read by the parser, from {@link System#nanoTime()}. 0 if unknown.
+	 */
+	public long getIngestTime() {
+		return ingestTime;
+	}
+
+	@Override
+	public String toString() {
+		return type + "[" + username + "] " + body;
+	}
+
+	/**
+	 * Selects which events are dispatched to a listener.
+	 * @see LogParser#subscribe(GameListener, java.util.Set, Filter)
+	 */
+	public interface Filter {
+		public boolean accept(LogEvent event);
+	}
+
+	public static enum Type {
+		MESSAGE,
+		JOINED,
+		LEFT,
+		ACHIEVEMENT,
+		DEATH,
+		EXIT,
+		/**
+		 * Any INFO line that isn't recognized as one of the other types.
+		 */
+		LOG
+	}
+}
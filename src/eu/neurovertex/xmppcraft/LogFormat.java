@@ -0,0 +1,419 @@
+package eu.neurovertex.xmppcraft;
+
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Describes the layout of the server log : the prefix of each line (time, thread and level) and the messages the
+ * bridge reacts to. Formats are declared as profiles in the settings (logparser.formats), the active one being chosen
+ * with logparser.format. Each template is compiled once into a list of literal fragments and fields, which are then
+ * matched with plain string comparisons. A leading %name% field can't contain spaces.
+ * <p>
+ * Templates are written with fields between percent signs, like "&lt;%name%&gt; %message%". Recognized keys in a
+ * profile are :
+ * <ul>
+ *     <li>prefix : template of the line prefix, with the fields %time%, %thread% and %level%</li>
+ *     <li>level : the level lines must have to be parsed (INFO)</li>
+ *     <li>stripcolors : whether ANSI escape sequences and '§' colour codes should be removed before parsing</li>
+ *     <li>chat, joined, left, achievement, exit : message templates, using the fields %name%, %message% and
+ *     %achievement%</li>
+ *     <li>deaths : language file the death messages are read from, on the file system or in the classpath. The
+ *     vanilla 1.8 messages are used if it can't be found.</li>
+ * </ul>
+ * Any key missing from a profile takes the value of the vanilla format.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:24
+ */
+public class LogFormat {
+	private static final Logger log = Logger.getLogger(LogFormat.class.getName());
+	public static final String DEFAULT_NAME = "vanilla";
+	private static final Map<String, Object> vanillaProfile = new LinkedHashMap<>();
+
+	static {
+		vanillaProfile.put("prefix", "[%time%] [%thread%/%level%]: ");
+		vanillaProfile.put("level", "INFO");
+		vanillaProfile.put("stripcolors", false);
+		vanillaProfile.put("chat", "<%name%> %message%");
+		vanillaProfile.put("joined", "%name% joined the game");
+		vanillaProfile.put("left", "%name% left the game");
+		vanillaProfile.put("achievement", "%name% has just earned the achievement [%achievement%]");
+		vanillaProfile.put("exit", "Stopping the server");
+		vanillaProfile.put("deaths", DeathMatcher.DEFAULT_SOURCE);
+	}
+
+	public static final LogFormat VANILLA = compile(DEFAULT_NAME, vanillaProfile);
+
+	private final String name;
+	final Template prefix, chat, joined, left, achievement, exit;
+	final DeathMatcher deaths;
+	private final String level;
+	private final byte[] levelBytes;
+	private final int levelField, timeField;
+	private final boolean stripColors;
+
+	private LogFormat(String name, Map<String, Object> profile) {
+		this.name = name;
+		prefix = Template.compile(getString(profile, "prefix"));
+		level = getString(profile, "level");
+		levelBytes = level.getBytes(Charset.defaultCharset());
+		levelField = prefix.indexOf("level");
+		if (levelField < 0)
+			throw new IllegalArgumentException("Prefix template has no %level% field");
+		timeField = prefix.indexOf("time");
+		stripColors = Boolean.parseBoolean(String.valueOf(get(profile, "stripcolors")));
+		chat = Template.compile(getString(profile, "chat"));
+		joined = Template.compile(getString(profile, "joined"));
+		left = Template.compile(getString(profile, "left"));
+		achievement = Template.compile(getString(profile, "achievement"));
+		exit = Template.compile(getString(profile, "exit"));
+		chat.require("name");
+		chat.require("message");
+		joined.require("name");
+		left.require("name");
+		achievement.require("name");
+		achievement.require("achievement");
+		deaths = DeathMatcher.load(getString(profile, "deaths"));
+	}
+
+	/**
+	 * Compiles a format profile.
+	 * @param name       Name of the profile
+	 * @param profile    Profile, as declared in the settings
+	 * @return	The compiled format
+	 * @throws IllegalArgumentException	If a template is invalid or lacks a field the parser needs
+	 */
+	public static LogFormat compile(String name, Map<String, Object> profile) {
+		return new LogFormat(name, profile);
+	}
+
+	/**
+	 * Compiles the format selected in the settings. Falls back on the vanilla format if it can't be found or compiled.
+	 * @param settings    The settings
+	 * @return	The compiled format
+	 */
+	public static LogFormat fromSettings(Settings settings) {
+		String name = settings.getString("logparser.format", DEFAULT_NAME);
+		try {
+			return fromSettings(settings, name);
+		} catch (IllegalArgumentException e) {
+			log.warning(e.getMessage());
+			return VANILLA;
+		}
+	}
+
+	/**
+	 * Compiles a format profile from the settings.
+	 * @param settings    The settings
+	 * @param name        Name of the profile
+	 * @return	The compiled format
+	 * @throws IllegalArgumentException	If there's no such profile, or it can't be compiled
+	 */
+	@SuppressWarnings("unchecked")
+	public static LogFormat fromSettings(Settings settings, String name) {
+		Object profiles = settings.get("logparser.formats", defaultProfiles()), profile = null;
+		if (profiles instanceof Map)
+			profile = ((Map<String, Object>) profiles).get(name);
+		if (profile instanceof Map)
+			try {
+				return compile(name, (Map<String, Object>) profile);
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("Invalid log format '" + name + "' : " + e.getMessage(), e);
+			}
+		else if (DEFAULT_NAME.equals(name))
+			return VANILLA;
+		else
+			throw new IllegalArgumentException("Unknown log format '" + name + "'");
+	}
+
+	/**
+	 * Default profiles, written to the settings when there are none : vanilla, and Spigot which has no thread name in
+	 * its prefix.
+	 * @return	The default profiles
+	 */
+	private static Map<String, Object> defaultProfiles() {
+		Map<String, Object> profiles = new LinkedHashMap<>(), spigot = new LinkedHashMap<>(vanillaProfile);
+		spigot.put("prefix", "[%time% %level%]: ");
+		spigot.put("stripcolors", true);
+		profiles.put(DEFAULT_NAME, new LinkedHashMap<>(vanillaProfile));
+		profiles.put("spigot", spigot);
+		return profiles;
+	}
+
+	private static Object get(Map<String, Object> profile, String key) {
+		Object value = profile.get(key);
+		return value != null ? value : vanillaProfile.get(key);
+	}
+
+	private static String getString(Map<String, Object> profile, String key) {
+		return String.valueOf(get(profile, key));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Parses the prefix of a line.
+	 * @param line    Raw line
+	 * @return	The index at which the log message starts, or -1 if the prefix doesn't match or the level isn't the
+	 * expected one
+	 */
+	int parsePrefix(String line) {
+		return prefix.matchPrefix(line, levelField, level);
+	}
+
+	/**
+	 * Reads the time of a line, printed as HH:mm:ss at the start of the %time% field of the prefix.
+	 * @param line    Raw line, whose prefix matched
+	 * @return	The time of day in milliseconds, or -1 if the prefix has no time or it can't be read
+	 */
+	int parseTime(String line) {
+		int pos = timeField < 0 ? -1 : prefix.fieldStart(line, timeField);
+		if (pos < 0 || pos + 8 > line.length() || line.charAt(pos + 2) != ':' || line.charAt(pos + 5) != ':')
+			return -1;
+		int h = twoDigits(line, pos), m = twoDigits(line, pos + 3), s = twoDigits(line, pos + 6);
+		return h < 0 || m < 0 || s < 0 ? -1 : ((h * 60 + m) * 60 + s) * 1000;
+	}
+
+	private static int twoDigits(String line, int pos) {
+		char a = line.charAt(pos), b = line.charAt(pos + 1);
+		return a >= '0' && a <= '9' && b >= '0' && b <= '9' ? (a - '0') * 10 + b - '0' : -1;
+	}
+
+	/**
+	 * Byte-level equivalent of {@link #parsePrefix(String)}. If colours are to be stripped, they are removed from the
+	 * buffer first.
+	 * @param buffer    Buffer holding the line
+	 * @param off       Offset of the line
+	 * @param len       Length of the line
+	 * @return	The new length of the line if it has the right prefix, -1 otherwise
+	 */
+	int accept(byte[] buffer, int off, int len) {
+		if (stripColors)
+			len = stripColors(buffer, off, len);
+		return prefix.matchPrefix(buffer, off, len, levelField, levelBytes) >= 0 ? len : -1;
+	}
+
+	/**
+	 * Removes ANSI escape sequences (ESC '[' ... final byte) and '§' colour codes (UTF-8 encoded '§' and the following
+	 * character) in place.
+	 * @return	The new length
+	 */
+	static int stripColors(byte[] buffer, int off, int len) {
+		int end = off + len, w = off;
+		for (int r = off; r < end; r++) {
+			byte b = buffer[r];
+			if (b == 0x1B && r + 1 < end && buffer[r + 1] == '[') {
+				r += 2;
+				while (r < end && (buffer[r] < 0x40 || buffer[r] > 0x7E))
+					r++;
+			} else if (b == (byte) 0xC2 && r + 1 < end && buffer[r + 1] == (byte) 0xA7) {
+				r += 2;
+			} else
+				buffer[w++] = b;
+		}
+		return w - off;
+	}
+
+	@Override
+	public String toString() {
+		return "{LogFormat:" + name + "}";
+	}
+
+	/**
+	 * A compiled template : literals[i] precedes fields[i], and the last literal follows the last field (it may be
+	 * empty). Fields are never empty. When the template ends with a literal, the last field extends up to that literal
+	 * at the end of the line; other fields end at the first occurrence of the literal that follows them.
+	 */
+	static class Template {
+		private final String[] literals, fields;
+		private final byte[][] literalBytes;
+
+		private Template(String[] literals, String[] fields) {
+			this.literals = literals;
+			this.fields = fields;
+			literalBytes = new byte[literals.length][];
+			for (int i = 0; i < literals.length; i++)
+				literalBytes[i] = literals[i].getBytes(Charset.defaultCharset());
+		}
+
+		static Template compile(String template) {
+			List<String> literals = new ArrayList<>(), fields = new ArrayList<>();
+			int pos = 0, start;
+			while ((start = template.indexOf('%', pos)) >= 0) {
+				int end = template.indexOf('%', start + 1);
+				if (end < 0)
+					throw new IllegalArgumentException("Unclosed field in '" + template + "'");
+				literals.add(template.substring(pos, start));
+				fields.add(template.substring(start + 1, end));
+				pos = end + 1;
+			}
+			literals.add(template.substring(pos));
+			for (int i = 1; i < literals.size() - 1; i++)
+				if (literals.get(i).length() == 0)
+					throw new IllegalArgumentException("Consecutive fields in '" + template + "'");
+			return new Template(literals.toArray(new String[literals.size()]), fields.toArray(new String[fields.size()]));
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(literals[0]);
+			for (int i = 0; i < fields.length; i++)
+				sb.append('%').append(fields[i]).append('%').append(literals[i + 1]);
+			return sb.toString();
+		}
+
+		int indexOf(String field) {
+			return Arrays.asList(fields).indexOf(field);
+		}
+
+		/**
+		 * @param field    Name of a field the template must have
+		 * @return	The index of the field
+		 * @throws IllegalArgumentException	If the template doesn't have it
+		 */
+		int require(String field) {
+			int index = indexOf(field);
+			if (index < 0)
+				throw new IllegalArgumentException("Missing %" + field + "% field in '" + this + "'");
+			return index;
+		}
+
+		int fieldCount() {
+			return fields.length;
+		}
+
+		/**
+		 * Returns a character lines must have for the template to match, so that callers can rule it out without calling
+		 * {@link #match(String, int, String[])} : the first character of the template if it starts with a literal, or
+		 * for a leading %name% (which has no spaces), the character following the first space of the next literal.
+		 * @return	The key character, or -1 if there's none
+		 * @see #keyAfterSpace()
+		 */
+		int keyChar() {
+			if (literals[0].length() > 0)
+				return literals[0].charAt(0);
+			int space = keyAfterSpace() ? literals[1].indexOf(' ') : -1;
+			return space >= 0 && space + 1 < literals[1].length() ? literals[1].charAt(space + 1) : -1;
+		}
+
+		/**
+		 * @return	Whether {@link #keyChar()} is the character following the line's first space, rather than its first
+		 * character
+		 */
+		boolean keyAfterSpace() {
+			return literals[0].length() == 0 && fields.length > 0 && "name".equals(fields[0]);
+		}
+
+		/**
+		 * Matches the whole end of a line, from the given position.
+		 * @param line      The line
+		 * @param from      Start of the part to match
+		 * @param values    Receives the field values, in template order. May be null if the template has no fields.
+		 * @return	Whether the line matched. values may have been modified even if it didn't.
+		 */
+		boolean match(String line, int from, String[] values) {
+			int to = line.length(), last = literals.length - 1;
+			if (!line.startsWith(literals[0], from))
+				return false;
+			if (fields.length == 0)
+				return to - from == literals[0].length();
+			int lastEnd = to - literals[last].length();
+			if (lastEnd < from || !line.startsWith(literals[last], lastEnd))
+				return false;
+			int pos = from + literals[0].length();
+			for (int i = 0; i < fields.length; i++) {
+				int end = i + 1 == last ? lastEnd : line.indexOf(literals[i + 1], pos + 1);
+				if (end <= pos || end > lastEnd)
+					return false;
+				String value = line.substring(pos, end);
+				if (i == 0 && literals[0].length() == 0 && "name".equals(fields[i]) && value.indexOf(' ') >= 0)
+					return false; // A leading player name can't have spaces, or anything would match
+				values[i] = value;
+				pos = end + literals[i + 1].length();
+			}
+			return true;
+		}
+
+		/**
+		 * Matches the start of a line against a prefix template, checking the value of one of its fields.
+		 * @param line          The line
+		 * @param checkField    Index of the field to check
+		 * @param expected      Expected value of that field
+		 * @return	The end of the prefix, or -1 if it didn't match
+		 */
+		int matchPrefix(String line, int checkField, String expected) {
+			if (!line.startsWith(literals[0]))
+				return -1;
+			int pos = literals[0].length();
+			for (int i = 0; i < fields.length; i++) {
+				String next = literals[i + 1];
+				int end = next.length() == 0 ? line.length() : line.indexOf(next, pos + 1);
+				if (end <= pos)
+					return -1;
+				if (i == checkField && (end - pos != expected.length() || !line.startsWith(expected, pos)))
+					return -1;
+				pos = end + next.length();
+			}
+			return pos;
+		}
+
+		/**
+		 * Finds where a field of a prefix template starts in a line.
+		 * @param line     The line
+		 * @param field    Index of the field
+		 * @return	The index of the field's first character, or -1 if the line doesn't match up to there
+		 */
+		int fieldStart(String line, int field) {
+			if (!line.startsWith(literals[0]))
+				return -1;
+			int pos = literals[0].length();
+			for (int i = 0; i < field; i++) {
+				String next = literals[i + 1];
+				int end = next.length() == 0 ? line.length() : line.indexOf(next, pos + 1);
+				if (end <= pos)
+					return -1;
+				pos = end + next.length();
+			}
+			return pos;
+		}
+
+		/**
+		 * Byte-level equivalent of {@link #matchPrefix(String, int, String)}
+		 */
+		int matchPrefix(byte[] buffer, int off, int len, int checkField, byte[] expected) {
+			int end = off + len;
+			if (!regionMatches(buffer, off, end, literalBytes[0]))
+				return -1;
+			int pos = off + literalBytes[0].length;
+			for (int i = 0; i < fields.length; i++) {
+				byte[] next = literalBytes[i + 1];
+				int fieldEnd = next.length == 0 ? end : indexOf(buffer, pos + 1, end, next);
+				if (fieldEnd <= pos)
+					return -1;
+				if (i == checkField && (fieldEnd - pos != expected.length || !regionMatches(buffer, pos, end, expected)))
+					return -1;
+				pos = fieldEnd + next.length;
+			}
+			return pos - off;
+		}
+
+		private static boolean regionMatches(byte[] buffer, int pos, int end, byte[] bytes) {
+			if (end - pos < bytes.length)
+				return false;
+			for (int i = 0; i < bytes.length; i++)
+				if (buffer[pos + i] != bytes[i])
+					return false;
+			return true;
+		}
+
+		private static int indexOf(byte[] buffer, int from, int end, byte[] bytes) {
+			for (int i = from; i <= end - bytes.length; i++)
+				if (buffer[i] == bytes[0] && regionMatches(buffer, i, end, bytes))
+					return i;
+			return -1;
+		}
+	}
+}
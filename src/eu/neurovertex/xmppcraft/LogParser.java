@@ -1,14 +1,16 @@
 package eu.neurovertex.xmppcraft;
 
+import eu.neurovertex.io.LineFramer;
+import eu.neurovertex.util.SPSCRingBuffer;
+
 import java.io.*;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * @author Neurovertex
@@ -16,75 +18,200 @@ import java.util.regex.Pattern;
  */
 public class LogParser implements Runnable, Closeable {
 	private static final Logger log = Logger.getLogger(LogParser.class.getName());
-	private static final String logPrefix = "\\[.*\\] \\[.*/INFO\\]: ";
-	private static final Pattern logMessage = Pattern.compile(logPrefix +"(.*)"),
-								message = Pattern.compile(logPrefix+ "<(.+)> (.+)"),
-								join = Pattern.compile(logPrefix+ "([^ ]+) (joined|left) the game"),
-								achievement = Pattern.compile(logPrefix+ "([^ ]+) has just earned the achievement \\[(.+)\\]"),
-								death = Pattern.compile(logPrefix+ "([^ ]+) ((was|walked|drowned|blew|hit|fell|went|burned|got|tried|died|starved|suffocated|withered).+)"),
-								exit = Pattern.compile(logPrefix+ "Stopping the server");
-	private final List<GameListener> listeners = new ArrayList<>();
-	private List<String> captureBuffer;
+	/**
+	 * Default capacity of the queue between the stream reader and the listener thread
+	 */
+	public static final int DEFAULT_QUEUE_SIZE = 4096;
+	/**
+	 * Prefix of the unique tokens used to mark the end of a command's output.
+	 */
+	public static final String CAPTURE_TOKEN = "#xmppcraft";
+	/**
+	 * Default capacity of each subscription's queue
+	 */
+	public static final int DEFAULT_LANE_SIZE = 1024;
+	/**
+	 * All subscriptions, in registration order. Only modified under its own lock; the dispatching thread only reads
+	 * the {@link #subscribers} snapshot.
+	 */
+	private final List<Subscription> subscriptions = new ArrayList<>();
+	/**
+	 * Subscriptions indexed by event type ordinal. Rebuilt and republished whenever a subscription changes.
+	 */
+	private volatile Subscription[][] subscribers = buildSubscribers(Collections.<Subscription>emptyList());
+	private volatile LogClassifier classifier;
+	/**
+	 * Open capture sessions, in the order they were started.
+	 */
+	private final Queue<Capture> captures = new ConcurrentLinkedQueue<>();
+	/**
+	 * End markers of sessions that timed out, so that their late answer isn't mistaken for command output.
+	 */
+	private final Set<String> expiredMarkers = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > 32;
+		}
+	});
+	/**
+	 * Size of {@link #expiredMarkers}, so that the listener thread can skip it without locking when it's empty.
+	 */
+	private volatile int expiredCount;
 	private InputStream in;
-	private boolean stop = true;
+	private volatile boolean stop = true;
 	private Thread listenerThread, readThread;
 
-	private Queue<String> fifo = new LinkedList<>();
+	/**
+	 * Events classified but not yet dispatched. The stream reader is the only producer and the listener thread the only
+	 * consumer.
+	 * <p>
+	 * Overload policy : player events (chat, join/left, achievements, deaths) and exit are never dropped. Once the
+	 * queue is 3/4 full, only one generic log line in {@link #sampleRate} is kept, and none once it is 7/8 full, unless
+	 * a capture session is open. If the queue fills up anyway, the reader waits for room, so back-pressure goes to the
+	 * pipe rather than player events being lost.
+	 */
+	private final SPSCRingBuffer<LogEvent> fifo;
+	private final int highWater, fullWater;
+	private volatile int sampleRate = 16;
+	/**
+	 * Folds repeated generic log lines before they are queued. Null if disabled. Only used by the reader thread.
+	 */
+	private volatile RepeatFilter repeatFilter;
+	/**
+	 * Only written by the reader thread.
+	 */
+	private volatile long readCount, droppedCount;
+	private final AtomicLong listenerErrors = new AtomicLong();
+	private volatile int laneSize = DEFAULT_LANE_SIZE;
+	private volatile boolean lagRecorded = true;
 
 	public LogParser(InputStream in) {
+		this(in, DEFAULT_QUEUE_SIZE, LogFormat.VANILLA);
+	}
+
+	/**
+	 * Creates a LogParser
+	 * @param in           Stream to read the server output from
+	 * @param queueSize    Capacity of the queue between the reading and dispatching threads. Rounded up to a power of two.
+	 * @param format       Format of the log
+	 */
+	public LogParser(InputStream in, int queueSize, LogFormat format) {
 		this.in = in;
+		this.fifo = new SPSCRingBuffer<>(queueSize);
+		this.classifier = new LogClassifier(format);
+		highWater = fifo.capacity() - fifo.capacity() / 4;
+		fullWater = fifo.capacity() - fifo.capacity() / 8;
+	}
+
+	/**
+	 * Sets how generic log lines are sampled when the listener thread falls behind.
+	 * @param sampleRate    One line out of sampleRate is kept. 0 drops them all.
+	 */
+	public void setSampleRate(int sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * Sets whether the delay between a line's timestamp and its reading goes to {@link Latency.Stage#LAG}. Only
+	 * meaningful when reading a live log : replayed logs would record how old they are.
+	 * @param lagRecorded    Whether to record the lag. True by default.
+	 */
+	public void setLagRecorded(boolean lagRecorded) {
+		this.lagRecorded = lagRecorded;
+	}
+
+	/**
+	 * Sets the window during which repeated generic log lines are folded into a single summary. Lines are only folded
+	 * when no capture session is open.
+	 * @param millis    Length of the window in milliseconds, 0 to disable
+	 * @see RepeatFilter
+	 */
+	public void setRepeatWindow(long millis) {
+		repeatFilter = millis > 0 ? new RepeatFilter(millis) : null;
+	}
+
+	/**
+	 * @return	Number of generic log lines folded into repeat summaries
+	 */
+	public long getFoldedCount() {
+		RepeatFilter filter = repeatFilter;
+		return filter == null ? 0 : filter.getFoldedCount();
+	}
+
+	/**
+	 * @return	Number of events classified by the reader thread
+	 */
+	public long getReadCount() {
+		return readCount;
+	}
+
+	/**
+	 * @return	Number of generic log lines dropped because the listener thread was falling behind
+	 */
+	public long getDroppedCount() {
+		return droppedCount;
+	}
+
+	/**
+	 * @return	Number of exceptions thrown by listeners
+	 */
+	public long getListenerErrors() {
+		return listenerErrors.get();
+	}
+
+	/**
+	 * Sets the capacity of the queue of subscriptions created from now on.
+	 * @param laneSize    Capacity, rounded up to a power of two
+	 */
+	public void setLaneSize(int laneSize) {
+		this.laneSize = laneSize;
+	}
+
+	/**
+	 * @return	The current subscriptions, in registration order, for their statistics
+	 */
+	public List<Subscription> getSubscriptions() {
+		synchronized (subscriptions) {
+			return new ArrayList<>(subscriptions);
+		}
+	}
+
+	/**
+	 * @return	Number of events waiting to be dispatched
+	 */
+	public int getQueueSize() {
+		return fifo.size();
+	}
+
+	public int getQueueCapacity() {
+		return fifo.capacity();
+	}
+
+	/**
+	 * Changes the log format. Takes effect from the next line on, without restarting the parser.
+	 * @param format    The new format
+	 */
+	public void setFormat(LogFormat format) {
+		classifier = new LogClassifier(format);
+		log.info("Log format set to " + format.getName());
+	}
+
+	public LogFormat getFormat() {
+		return classifier.getFormat();
 	}
 
 	@Override
 	public void run() {
-		synchronized (this) {
-			String line;
-
-			try {
-				do {
-					while (fifo.size() == 0 && !stop)
-						this.wait();
-					if (stop)
-						return;
-					line = fifo.poll();
-					if (line == null) {
-						System.err.println("Empty queue");
-						System.exit(0);
-					}
-					List<GameListener> listeners = new ArrayList<>(this.listeners); // Avoid side effects if it gets changed during the execution
-					Matcher matcher;
-					if ((matcher = message.matcher(line)).matches()) {
-						String name = matcher.group(1), body = matcher.group(2);
-						for (GameListener listener : listeners)
-							listener.onMessage(name, body);
-					} else if ((matcher = join.matcher(line)).matches()) {
-						String name = matcher.group(1), body = matcher.group(2);
-						for (GameListener listener : listeners)
-							listener.onJoinLeft(name, body.equals("joined"));
-					} else if ((matcher = achievement.matcher(line)).matches()) {
-						String name = matcher.group(1), body = matcher.group(2);
-						for (GameListener listener : listeners)
-							listener.onAchievement(name, body);
-					} else if ((matcher = death.matcher(line)).matches()) {
-						String name = matcher.group(1), body = matcher.group(2);
-						for (GameListener listener : listeners)
-							listener.onDeath(name, body);
-					} else if (exit.matcher(line).matches()) {
-						for (GameListener listener : listeners)
-							listener.onExit();
-					} else {
-						if ((matcher = logMessage.matcher(line)).matches()) {
-							line = matcher.group(1);
-							if (captureBuffer != null) {
-								captureBuffer.add(line);
-							}
-							for (GameListener listener : listeners)
-								listener.onLog(line);
-						}
-					}
-				} while (true);
-			} catch (InterruptedException ignored) {
+		try {
+			while (!stop) {
+				LogEvent event = fifo.take();
+				Latency.record(Latency.Stage.QUEUE, System.nanoTime() - event.getIngestTime());
+				if (event.getType() == LogEvent.Type.LOG && (!captures.isEmpty() || expiredCount > 0) && routeCapture(event.getBody()))
+					continue; // End marker, not a real log line
+				for (Subscription sub : subscribers[event.getType().ordinal()])
+					sub.offer(event);
 			}
+		} catch (InterruptedException ignored) {
 		}
 	}
 
@@ -102,52 +229,467 @@ public class LogParser implements Runnable, Closeable {
 		listenerThread.start();
 	}
 
+	/**
+	 * Stops the parser. Waits for the stream reader to exit, so that another parser can be started on the same stream
+	 * right away : pipes only allow one reader at a time. May be called from a listener (a reset requested from the
+	 * chat, for instance), whose worker then finishes handling its current event instead of being interrupted.
+	 */
 	@Override
-	public void close() throws IOException {
+	public void close() {
 		stop = true;
 		readThread.interrupt();
-		listenerThread.interrupt();
+		if (Thread.currentThread() != listenerThread)
+			listenerThread.interrupt();
+		if (Thread.currentThread() != readThread) {
+			boolean interrupted = Thread.interrupted();
+			while (readThread.isAlive())
+				try {
+					readThread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+		synchronized (subscriptions) {
+			for (Subscription sub : subscriptions)
+				sub.close();
+		}
+	}
+
+	/**
+	 * Calls the listener method corresponding to the event type.
+	 * @param listener    Listener to notify
+	 * @param event       Event to dispatch
+	 */
+	private static void dispatch(GameListener listener, LogEvent event) {
+		switch (event.getType()) {
+			case MESSAGE:
+				listener.onMessage(event.getUsername(), event.getBody());
+				break;
+			case JOINED:
+			case LEFT:
+				listener.onJoinLeft(event.getUsername(), event.getType() == LogEvent.Type.JOINED);
+				break;
+			case ACHIEVEMENT:
+				listener.onAchievement(event.getUsername(), event.getBody());
+				break;
+			case DEATH:
+				if (listener instanceof DeathListener)
+					((DeathListener) listener).onDeath(event);
+				else
+					listener.onDeath(event.getUsername(), event.getBody());
+				break;
+			case EXIT:
+				listener.onExit();
+				break;
+			case LOG:
+				listener.onLog(event.getBody());
+				break;
+		}
 	}
 
+	/**
+	 * Registers a listener for every event type.
+	 * @param l    The listener
+	 * @see #subscribe(GameListener, java.util.Set, eu.neurovertex.xmppcraft.LogEvent.Filter)
+	 */
 	public void addGameChatListener(GameListener l) {
-		listeners.add(l);
+		subscribe(l, EnumSet.allOf(LogEvent.Type.class), null);
+	}
+
+	/**
+	 * Registers a listener for some event types only. The listener methods corresponding to other types will never
+	 * be called. A listener may be subscribed several times, with different types and filters.
+	 * <p>
+	 * Each subscription gets its own queue and thread, so a slow listener doesn't hold the others back. Events are
+	 * dispatched to a given subscription in the order they were read.
+	 * @param l         The listener
+	 * @param types     Event types the listener wants
+	 * @param filter    Optional filter, events it rejects aren't dispatched to the listener. May be null. Called from
+	 *                  the parser's listener thread, so it should be cheap.
+	 * @return	The subscription
+	 */
+	public Subscription subscribe(GameListener l, Set<LogEvent.Type> types, LogEvent.Filter filter) {
+		Subscription sub = new Subscription(l, EnumSet.copyOf(types), filter, laneSize);
+		synchronized (subscriptions) {
+			subscriptions.add(sub);
+			subscribers = buildSubscribers(subscriptions);
+		}
+		return sub;
+	}
+
+	/**
+	 * Removes every subscription of a listener.
+	 * Events still queued for these subscriptions are discarded.
+	 * @param l    The listener
+	 */
+	public void unsubscribe(GameListener l) {
+		synchronized (subscriptions) {
+			for (Iterator<Subscription> it = subscriptions.iterator(); it.hasNext(); ) {
+				Subscription sub = it.next();
+				if (sub.listener == l) {
+					it.remove();
+					sub.close();
+				}
+			}
+			subscribers = buildSubscribers(subscriptions);
+		}
 	}
 
 	public void clearGameChatListeners() {
-		listeners.clear();
+		synchronized (subscriptions) {
+			for (Subscription sub : subscriptions)
+				sub.close();
+			subscriptions.clear();
+			subscribers = buildSubscribers(subscriptions);
+		}
+	}
+
+	private static Subscription[][] buildSubscribers(List<Subscription> subscriptions) {
+		LogEvent.Type[] types = LogEvent.Type.values();
+		Subscription[][] subscribers = new Subscription[types.length][];
+		List<Subscription> list = new ArrayList<>();
+		for (LogEvent.Type type : types) {
+			list.clear();
+			for (Subscription sub : subscriptions)
+				if (sub.types.contains(type))
+					list.add(sub);
+			subscribers[type.ordinal()] = list.toArray(new Subscription[list.size()]);
+		}
+		return subscribers;
+	}
+
+	/**
+	 * Assigns a log line to the capture sessions. Commands are executed by the server in the order they were sent, so
+	 * output lines belong to the oldest session with an end marker, until that marker is read. Sessions without a
+	 * marker get a copy of every line.
+	 * @param line    Log message
+	 * @return	true if the line was an end marker
+	 */
+	private boolean routeCapture(String line) {
+		for (Capture c : captures)
+			if (line.equals(c.endMarker)) {
+				// Any session started before this one is necessarily over
+				Iterator<Capture> it = captures.iterator();
+				while (it.hasNext()) {
+					Capture d = it.next();
+					if (d.endMarker != null) {
+						it.remove();
+						d.done.countDown();
+					}
+					if (d == c)
+						break;
+				}
+				return true;
+			}
+		synchronized (expiredMarkers) {
+			if (expiredMarkers.remove(line)) {
+				expiredCount = expiredMarkers.size();
+				return true;
+			}
+		}
+		boolean assigned = false;
+		for (Capture c : captures)
+			if (c.endMarker == null)
+				c.add(line);
+			else if (!assigned) {
+				c.add(line);
+				assigned = true;
+			}
+		return false;
 	}
 
+	/**
+	 * Captures the log lines (unrecognized lines only, as passed to {@link GameListener#onLog(String)}) for a fixed
+	 * amount of time.
+	 * @param millis    Duration of the capture
+	 * @return	The captured lines
+	 * @throws InterruptedException	If interrupted while waiting
+	 * @see #startCapture(String)
+	 */
 	public List<String> capture(long millis) throws InterruptedException {
-		synchronized (this) {
-			captureBuffer = new ArrayList<>(32);
+		return startCapture(null).await(millis);
+	}
+
+	/**
+	 * Starts a capture session for log lines (unrecognized lines only, as passed to
+	 * {@link GameListener#onLog(String)}). Any number of sessions may be open at once. The session ends when a line equal
+	 * to its end marker is read, or when {@link Capture#await(long)} times out. The end marker line itself is neither
+	 * captured nor passed to the listeners.
+	 * <p>
+	 * Lines are assigned to sessions in the order they were started, so the caller must make sure sessions are started
+	 * in the same order as the corresponding commands are sent (typically by doing both under the same lock).
+	 * @param endMarker    Log message ending the capture, or null to capture every line until the timeout
+	 * @return	The capture, to be waited on once the command has been sent
+	 * @see #routeCapture(String)
+	 */
+	public Capture startCapture(String endMarker) {
+		Capture capture = new Capture(endMarker);
+		captures.add(capture);
+		return capture;
+	}
+
+	/**
+	 * A capture session, started by {@link #startCapture(String)}.
+	 */
+	public class Capture {
+		private final String endMarker;
+		private final List<String> lines = new ArrayList<>(32);
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		private Capture(String endMarker) {
+			this.endMarker = endMarker;
+		}
+
+		private void add(String line) {
+			synchronized (lines) {
+				lines.add(line);
+			}
 		}
-		Thread.sleep(millis);
-		List<String> result;
-		synchronized (this) {
-			result = captureBuffer;
-			captureBuffer = null;
+
+		/**
+		 * Waits for the end marker, then closes the session.
+		 * @param timeout    Maximum time to wait, in milliseconds
+		 * @return	The captured lines
+		 * @throws InterruptedException	If interrupted while waiting
+		 */
+		public List<String> await(long timeout) throws InterruptedException {
+			try {
+				done.await(timeout, TimeUnit.MILLISECONDS);
+			} finally {
+				if (endMarker == null)
+					captures.remove(this);
+				else {
+					// The marker is expired before the session is removed, so that an answer read in between is still caught
+					synchronized (expiredMarkers) {
+						expiredMarkers.add(endMarker);
+						expiredCount = expiredMarkers.size();
+					}
+					if (captures.remove(this))
+						log.fine("Capture timed out waiting for '" + endMarker + "'");
+					else
+						synchronized (expiredMarkers) { // Ended normally, the marker has already been read
+							expiredMarkers.remove(endMarker);
+							expiredCount = expiredMarkers.size();
+						}
+				}
+			}
+			synchronized (lines) {
+				return new ArrayList<>(lines);
+			}
+		}
+	}
+
+	/**
+	 * A listener's subscription, with its own queue and worker thread. The parser's listener thread is the only
+	 * producer and the worker the only consumer.
+	 * <p>
+	 * When the queue is full, generic log lines are dropped for this subscription only, while other events wait for
+	 * room : a listener that stays too slow eventually holds back the others, rather than missing player events.
+	 */
+	public class Subscription implements Runnable {
+		private final GameListener listener;
+		private final Set<LogEvent.Type> types;
+		private final LogEvent.Filter filter;
+		private final SPSCRingBuffer<LogEvent> queue;
+		private final Thread worker;
+		private volatile boolean closed;
+		/**
+		 * dropped and stalls are only written by the parser's listener thread, the others by the worker.
+		 */
+		private volatile long dropped, stalls, dispatched, busyTime, maxTime;
+		private final AtomicLong errors = new AtomicLong();
+
+		private Subscription(GameListener listener, Set<LogEvent.Type> types, LogEvent.Filter filter, int queueSize) {
+			this.listener = listener;
+			this.types = types;
+			this.filter = filter;
+			this.queue = new SPSCRingBuffer<>(queueSize);
+			worker = new Thread(this);
+			worker.setDaemon(true);
+			String name = listener.getClass().getSimpleName();
+			worker.setName("LogParser Listener " + (name.isEmpty() ? listener.getClass().getName() : name));
+			worker.start();
+		}
+
+		/**
+		 * Queues an event, if the filter accepts it. Called from the parser's listener thread.
+		 * @param event    The event
+		 * @throws InterruptedException	If interrupted while waiting for room
+		 */
+		private void offer(LogEvent event) throws InterruptedException {
+			try {
+				if (filter != null && !filter.accept(event))
+					return;
+			} catch (RuntimeException e) {
+				errors.incrementAndGet();
+				listenerErrors.incrementAndGet();
+				log.log(Level.SEVERE, "Filter of " + listener.getClass().getName() + " failed on " + event, e);
+				return;
+			}
+			if (queue.offer(event))
+				return;
+			if (event.getType() == LogEvent.Type.LOG) {
+				if (dropped++ == 0)
+					log.warning("Listener " + listener.getClass().getName() + " is falling behind, dropping log lines");
+			} else {
+				stalls++;
+				queue.put(event);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!closed) {
+					LogEvent event = queue.take();
+					long start = System.nanoTime();
+					try {
+						dispatch(listener, event);
+					} catch (RuntimeException e) {
+						errors.incrementAndGet();
+						listenerErrors.incrementAndGet();
+						log.log(Level.SEVERE, "Listener " + listener.getClass().getName() + " failed on " + event, e);
+					}
+					long now = System.nanoTime(), time = now - start;
+					Latency.record(Latency.Stage.DISPATCH, now - event.getIngestTime());
+					busyTime += time;
+					if (time > maxTime)
+						maxTime = time;
+					dispatched++;
+				}
+			} catch (InterruptedException ignored) {
+			}
+		}
+
+		private void close() {
+			closed = true;
+			if (Thread.currentThread() != worker)
+				worker.interrupt();
+		}
+
+		public GameListener getListener() {
+			return listener;
+		}
+
+		/**
+		 * @return	Number of events waiting to be dispatched to the listener
+		 */
+		public int getQueueSize() {
+			return queue.size();
+		}
+
+		/**
+		 * @return	Number of events dispatched to the listener
+		 */
+		public long getDispatchedCount() {
+			return dispatched;
+		}
+
+		/**
+		 * @return	Number of log lines dropped because the queue was full
+		 */
+		public long getDroppedCount() {
+			return dropped;
+		}
+
+		/**
+		 * @return	Number of times the parser had to wait for room in the queue
+		 */
+		public long getStallCount() {
+			return stalls;
+		}
+
+		/**
+		 * @return	Number of exceptions thrown by the listener or the filter
+		 */
+		public long getErrorCount() {
+			return errors.get();
+		}
+
+		/**
+		 * @return	Total time spent in the listener, in nanoseconds
+		 */
+		public long getBusyTime() {
+			return busyTime;
+		}
+
+		/**
+		 * @return	Longest time spent handling a single event, in nanoseconds
+		 */
+		public long getMaxTime() {
+			return maxTime;
 		}
-		return result;
 	}
 
 	private class StreamReader extends Thread {
+		private final List<LogEvent> pending = new ArrayList<>(2);
+		private long sampled = 0;
+
 		@Override
 		public void run() {
 			String line;
-			BufferedReader in = new BufferedReader(new InputStreamReader(LogParser.this.in));
+			LineFramer in = new LineFramer(LogParser.this.in, new LineFramer.Filter() {
+				@Override
+				public int accept(byte[] buffer, int off, int len) {
+					return classifier.accept(buffer, off, len);
+				}
+			});
 			try {
+				long readStart = System.nanoTime(), blocked = 0;
 				while ((line = in.readLine()) != null && !stop) {
-					if (stop)
-						return;
-					synchronized (LogParser.this) {
-						fifo.add(line);
-						LogParser.this.notifyAll();
+					long ingest = System.nanoTime();
+					Latency.record(Latency.Stage.READ, ingest - readStart - (in.getBlockedTime() - blocked));
+					LogClassifier classifier = LogParser.this.classifier;
+					LogEvent event = classifier.classify(line);
+					Latency.record(Latency.Stage.CLASSIFY, System.nanoTime() - ingest);
+					if (event != null) {
+						event.stamp(classifier.getFormat().parseTime(line), ingest);
+						if (lagRecorded)
+							Latency.recordLag(event.getGameTime());
+						queue(event);
 					}
+					readStart = System.nanoTime();
+					blocked = in.getBlockedTime();
 				}
 			} catch (Exception e) {
 				log.log(Level.WARNING, "Exception in StreamReader", e);
 			}
-			log.fine("Exitting LogParser thread");
+			log.fine("Exitting LogParser thread (" + in.getDiscardedCount() + " lines discarded)");
+		}
+
+		private void queue(LogEvent event) throws InterruptedException {
+			readCount++;
+			RepeatFilter repeats = repeatFilter;
+			if (event.getType() != LogEvent.Type.LOG || !captures.isEmpty())
+				fifo.put(event);
+			else if (repeats == null)
+				queueLog(event);
+			else {
+				repeats.filter(event, event.getIngestTime(), pending);
+				for (LogEvent e : pending) {
+					if (e.getIngestTime() == 0) // Summary
+						e.stamp(-1, event.getIngestTime());
+					queueLog(e);
+				}
+				pending.clear();
+			}
+		}
+
+		/**
+		 * Queues a generic log line, or drops it if the listener thread is falling behind.
+		 */
+		private void queueLog(LogEvent event) throws InterruptedException {
+			int size = fifo.size();
+			if (size >= highWater) {
+				int rate = sampleRate;
+				if (size >= fullWater || rate <= 0 || sampled++ % rate != 0) {
+					droppedCount++;
+					return;
+				}
+			}
+			fifo.put(event);
 		}
 	}
 }
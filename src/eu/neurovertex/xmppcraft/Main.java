@@ -1,7 +1,14 @@
 package eu.neurovertex.xmppcraft;
 
+import eu.neurovertex.io.FifoOutputStream;
+import eu.neurovertex.io.FileTailInputStream;
+import eu.neurovertex.io.LineBatchingOutputStream;
+import eu.neurovertex.io.NonBlockingPipeOutputStream;
 import eu.neurovertex.io.PipeInputStream;
 import eu.neurovertex.io.PipeOutputStream;
+import eu.neurovertex.io.PipeStats;
+import eu.neurovertex.io.RingPipeInputStream;
+import eu.neurovertex.io.RingPipeOutputStream;
 import net.minecraft.server.MinecraftServer;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.output.TeeOutputStream;
@@ -11,13 +18,16 @@ import org.jivesoftware.smack.XMPPException;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.file.Paths;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.logging.*;
 
 public class Main {
@@ -25,14 +35,16 @@ public class Main {
 	public static Logger log;
 	//private static ThreadGroup threadGroup;
 	private static Main INSTANCE;
+	private static NonBlockingPipeOutputStream stdoutTee;
 	private Settings settings = new Settings("settings.json");
 	private Updater updater;
 	private XMPPChatManager manager;
 	private LogParser parser;
 	private StreamCopier copier;
+	private CommandQueue commandQueue;
 	private InputStream oldStdin;
-	private PipeInputStream stdoutPipe;
-	private PipeOutputStream stdinPipe;
+	private InputStream stdoutPipe;
+	private OutputStream stdinPipe;
 	private List<Closeable> closeables = new ArrayList<>();
 
 	public Main() {
@@ -80,11 +92,21 @@ public class Main {
 
 			// Starting up XMPPCraft
 			Main main = new Main();
-			PipeInputStream stdinPipe = new PipeInputStream(1048576);
-			PipeOutputStream stdoutPipe = new PipeOutputStream();
-			main.init(System.in, new PipeOutputStream(stdinPipe), new PipeInputStream(stdoutPipe, 1048576));
+			if (args.length > 0 && args[0].equalsIgnoreCase("--sidecar")) {
+				main.runSidecar();
+				return;
+			}
+			main.settings.load();
+			int pipeSize = main.settings.getInteger("main.pipesize", 8 * 1048576);
+			RingPipeInputStream stdinPipe = new RingPipeInputStream(pipeSize), stdoutPipe = new RingPipeInputStream(pipeSize);
+			PipeStats.register("stdin", stdinPipe);
+			PipeStats.register("stdout", stdoutPipe);
+			main.init(System.in, new RingPipeOutputStream(stdinPipe), stdoutPipe);
 			System.setIn(stdinPipe);
-			System.setOut(new PrintStream(new TeeOutputStream(System.out, stdoutPipe)));
+			stdoutTee = createTee(main.settings, new RingPipeOutputStream(stdoutPipe));
+			int batch = main.settings.getInteger("main.tee.batch", 10);
+			OutputStream toParser = batch > 0 ? new LineBatchingOutputStream(stdoutTee, 65536, batch) : stdoutTee;
+			System.setOut(new PrintStream(new TeeOutputStream(System.out, toParser)));
 			main.start();
 			// Starting up Minecraft
 			MinecraftServer.main(args);
@@ -114,8 +136,83 @@ public class Main {
 		return INSTANCE;
 	}
 
+	/**
+	 * Wraps the pipe the server's output is copied to, so that the server never waits for XMPPCraft. Unless
+	 * main.tee.batch is 0, the server's threads only copy their output to a staging buffer, and complete lines are
+	 * passed on to the pipe every main.tee.batch milliseconds (see {@link LineBatchingOutputStream}). What happens when
+	 * the pipe is full depends on main.tee.overflow : "drop" drops the overflowing lines, "spill" writes them to
+	 * main.tee.spillfile, up to main.tee.spillmax bytes, to be fed to the parser once it catches up.
+	 */
+	private static NonBlockingPipeOutputStream createTee(Settings settings, RingPipeOutputStream pipe) {
+		String overflow = settings.getString("main.tee.overflow", "drop");
+		NonBlockingPipeOutputStream.OverflowPolicy policy;
+		try {
+			policy = NonBlockingPipeOutputStream.OverflowPolicy.valueOf(overflow.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			log.warning("Unknown main.tee.overflow policy '" + overflow + "', dropping overflow instead");
+			policy = NonBlockingPipeOutputStream.OverflowPolicy.DROP;
+		}
+		return new NonBlockingPipeOutputStream(pipe, policy, settings.getString("main.tee.spillfile", LOGFILE + ".spill"),
+				settings.getInteger("main.tee.spillmax", 64 * 1048576));
+	}
+
+	/**
+	 * @return	The stream the server's output is copied to XMPPCraft through, or null in sidecar mode
+	 */
+	public static NonBlockingPipeOutputStream getStdoutTee() {
+		return stdoutTee;
+	}
 
+	/**
+	 * Whether XMPPCraft runs as a separate process rather than wrapping the server.
+	 * @return	true in sidecar mode
+	 * @see #runSidecar()
+	 */
+	public static boolean isSidecar() {
+		return Boolean.getBoolean("xmppcraft.sidecar"); // Not a field, so that it survives updates
+	}
+
+	/**
+	 * Runs XMPPCraft in its own process next to the server, so that nothing it does can stall the game. The log is
+	 * followed from the server's log file (sidecar.log) instead of its standard output, and commands are written to
+	 * sidecar.commandpipe, a named pipe or file the server's console input is fed from. Returns only if interrupted.
+	 */
+	private void runSidecar() throws IOException, XMPPException, NoSuchAlgorithmException, SmackException, KeyManagementException {
+		System.setProperty("xmppcraft.sidecar", "true");
+		settings.load();
+		FileTailInputStream serverLog = new FileTailInputStream(Paths.get(settings.getString("sidecar.log", "logs/latest.log")),
+				Paths.get(settings.getString("sidecar.offsetfile", LOGFILE + ".offset")));
+		RingPipeInputStream commands = new RingPipeInputStream(settings.getInteger("main.pipesize", 8 * 1048576));
+		PipeStats.register("commands", commands);
+		init(System.in, new RingPipeOutputStream(commands), serverLog);
+		new StreamCopier(commands, new FifoOutputStream(settings.getString("sidecar.commandpipe", "server.stdin"))).start();
+		start();
+		log.info("Running in sidecar mode");
+		try {
+			new CountDownLatch(1).await(); // Every other thread is a daemon
+		} catch (InterruptedException ignore) {
+		}
+	}
+
+	/**
+	 * Signature of init before the ring pipes, which builds that predate them look up when they update to this one.
+	 */
 	public void init(InputStream oldStdin, PipeOutputStream stdin, PipeInputStream stdout) throws IOException {
+		init(oldStdin, (OutputStream) stdin, stdout);
+	}
+
+	public void init(InputStream oldStdin, OutputStream stdin, InputStream stdout) throws IOException {
+		init(oldStdin, stdin, stdout, null);
+	}
+
+	/**
+	 * @param oldStdin    The server's original standard input
+	 * @param stdin       Pipe to the server's standard input
+	 * @param stdout      Pipe from the server's standard output
+	 * @param queue       Command queue of the previous instance, taken over along with the pipes, or null to create one.
+	 *                    Console lines read by the previous instance's copier keep going through it.
+	 */
+	public void init(InputStream oldStdin, OutputStream stdin, InputStream stdout, CommandQueue queue) throws IOException {
 		this.stdoutPipe = stdout;
 		this.stdinPipe = stdin;
 		this.oldStdin = oldStdin;
@@ -123,20 +220,27 @@ public class Main {
 		updater = new Updater();
 		UserRegistry.REGISTRY.load();
 		manager = new XMPPChatManager();
-		copier = new StreamCopier(oldStdin, stdinPipe);
-		parser = new LogParser(stdoutPipe);
+		commandQueue = queue != null ? queue : new CommandQueue(stdinPipe, settings.getInteger("commandqueue.pertick", 5), settings.getInteger("commandqueue.tick", 50));
+		copier = new StreamCopier(oldStdin, commandQueue);
+		parser = new LogParser(stdoutPipe, settings.getInteger("logparser.queuesize", LogParser.DEFAULT_QUEUE_SIZE), LogFormat.fromSettings(settings));
+		parser.setSampleRate(settings.getInteger("logparser.overload.sample", 16));
+		parser.setRepeatWindow(settings.getInteger("logparser.repeatwindow", 5000));
+		parser.setLaneSize(settings.getInteger("logparser.lanesize", LogParser.DEFAULT_LANE_SIZE));
 	}
 
 	public void start() throws IOException, XMPPException, NoSuchAlgorithmException, SmackException, KeyManagementException {
 		manager.start();
+		if (!commandQueue.isRunning())
+			commandQueue.start();
 		copier.start();
 		parser.start();
 
 		closeables.add(manager);
 		closeables.add(copier);
+		closeables.add(commandQueue);
 		closeables.add(parser);
 		//parser.addGameChatListener(new LogChatListener()); // Debugging
-		parser.addGameChatListener(manager.createBot());
+		parser.subscribe(manager.createBot(), EnumSet.allOf(LogEvent.Type.class), ChatBot.logFilter);
 		copier.addConsoleListener(manager.getBot());
 	}
 
@@ -156,10 +260,17 @@ public class Main {
 		if (Main.class.equals(cl))
 			return false; // Not a new class
 		Object newMain;
-		Method init = cl.getMethod("init", InputStream.class, PipeOutputStream.class, PipeInputStream.class), start = cl.getMethod("start");
+		Method init, start = cl.getMethod("start");
 		try {
 			newMain = cl.newInstance();
-			init.invoke(newMain, oldStdin, stdinPipe, stdoutPipe);
+			try {
+				init = cl.getMethod("init", InputStream.class, OutputStream.class, InputStream.class, CommandQueue.class);
+				init.invoke(newMain, oldStdin, stdinPipe, stdoutPipe, commandQueue);
+				closeables.remove(commandQueue); // Taken over by the new instance
+			} catch (NoSuchMethodException e) {
+				init = cl.getMethod("init", InputStream.class, OutputStream.class, InputStream.class);
+				init.invoke(newMain, oldStdin, stdinPipe, stdoutPipe);
+			}
 			stop();
 			start.invoke(newMain);
 			return true;
@@ -187,7 +298,8 @@ public class Main {
 	public void reset() {
 		Main main = new Main();
 		try {
-			main.init(oldStdin, stdinPipe, stdoutPipe);
+			main.init(oldStdin, stdinPipe, stdoutPipe, commandQueue);
+			closeables.remove(commandQueue); // Taken over by the new instance
 			stop();
 			try {
 				main.start();
@@ -205,7 +317,14 @@ public class Main {
 		}
 	}
 
-	public PipeOutputStream getPipeToStdin() {
+	public OutputStream getPipeToStdin() {
 		return stdinPipe;
 	}
+
+	/**
+	 * @return	The queue every command to the server should go through, rather than the pipe itself
+	 */
+	public CommandQueue getCommandQueue() {
+		return commandQueue;
+	}
 }
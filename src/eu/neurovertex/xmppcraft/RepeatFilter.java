@@ -0,0 +1,143 @@
+package eu.neurovertex.xmppcraft;
+
+import java.util.List;
+
+/**
+ * Folds repeated log lines ("Can't keep up!", "moved wrongly!", ...) into a single summary. Lines are compared with
+ * their numbers masked out, so "Running 2043ms behind" and "Running 51ms behind" are the same line. The first
+ * occurrence always goes through; further occurrences within the time window are counted instead, and reported as one
+ * summary event once the window is over.
+ * <p>
+ * Fingerprints are kept in a small open-addressing table, so the hot path is one hash computation and a couple of
+ * probes. Summaries are emitted when the same line shows up after its window, when its slot is reused, or during the
+ * periodic sweep done while processing lines : if the server goes quiet, the last summary waits for the next line.
+ * Not thread-safe, meant to be used by the LogParser reader thread only (the folded count may be read from anywhere).
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:26
+ */
+public class RepeatFilter {
+	private static final int TABLE_SIZE = 256, MAX_PROBES = 8;
+	private final long window;
+	private final int[] hashes = new int[TABLE_SIZE];
+	private final String[] lines = new String[TABLE_SIZE];
+	private final long[] windowStarts = new long[TABLE_SIZE];
+	private final int[] repeats = new int[TABLE_SIZE];
+	private long lastSweep;
+	private volatile long folded;
+
+	/**
+	 * Creates a RepeatFilter
+	 * @param windowMillis    Length of the window repeats are folded in, in milliseconds
+	 */
+	public RepeatFilter(long windowMillis) {
+		this.window = windowMillis * 1000000L;
+	}
+
+	/**
+	 * Filters a generic log event.
+	 * @param event    The event, of type {@link LogEvent.Type#LOG}
+	 * @param now      Current time, from {@link System#nanoTime()}
+	 * @param out      Receives the events to dispatch : possibly a summary of previous repeats, then the event itself
+	 *                 unless it is a repeat
+	 */
+	public void filter(LogEvent event, long now, List<LogEvent> out) {
+		if (now - lastSweep >= window) {
+			sweep(now, out);
+			lastSweep = now;
+		}
+		String line = event.getBody();
+		int hash = fingerprint(line), free = -1, oldest = -1;
+		for (int probe = 0; probe < MAX_PROBES; probe++) {
+			int slot = (hash + probe) & (TABLE_SIZE - 1);
+			if (lines[slot] == null) {
+				if (free < 0)
+					free = slot;
+				continue;
+			}
+			if (hashes[slot] == hash && sameShape(lines[slot], line)) {
+				if (now - windowStarts[slot] < window) {
+					repeats[slot]++;
+					folded++;
+					return;
+				}
+				summarize(slot, out);
+				windowStarts[slot] = now;
+				out.add(event);
+				return;
+			}
+			if (oldest < 0 || windowStarts[slot] - windowStarts[oldest] < 0)
+				oldest = slot;
+		}
+		int slot = free >= 0 ? free : oldest;
+		summarize(slot, out);
+		hashes[slot] = hash;
+		lines[slot] = line;
+		windowStarts[slot] = now;
+		out.add(event);
+	}
+
+	/**
+	 * Emits the summaries of expired windows and frees their slots.
+	 */
+	private void sweep(long now, List<LogEvent> out) {
+		for (int slot = 0; slot < TABLE_SIZE; slot++)
+			if (lines[slot] != null && now - windowStarts[slot] >= window) {
+				summarize(slot, out);
+				lines[slot] = null;
+			}
+	}
+
+	private void summarize(int slot, List<LogEvent> out) {
+		if (repeats[slot] > 0)
+			out.add(new LogEvent(LogEvent.Type.LOG, null, lines[slot] + " [repeated " + repeats[slot] + " more times]", repeats[slot]));
+		repeats[slot] = 0;
+	}
+
+	/**
+	 * @return	The number of lines folded into summaries so far
+	 */
+	public long getFoldedCount() {
+		return folded;
+	}
+
+	/**
+	 * Hashes a line, each run of digits counting as a single '#'.
+	 */
+	static int fingerprint(String line) {
+		int hash = 0;
+		boolean digits = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c >= '0' && c <= '9') {
+				if (!digits)
+					hash = 31 * hash + '#';
+				digits = true;
+			} else {
+				hash = 31 * hash + c;
+				digits = false;
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Compares two lines, any run of digits being equal to any other.
+	 */
+	static boolean sameShape(String a, String b) {
+		int i = 0, j = 0, la = a.length(), lb = b.length();
+		while (i < la && j < lb) {
+			char ca = a.charAt(i), cb = b.charAt(j);
+			boolean da = ca >= '0' && ca <= '9', db = cb >= '0' && cb <= '9';
+			if (da && db) {
+				while (++i < la && a.charAt(i) >= '0' && a.charAt(i) <= '9') ;
+				while (++j < lb && b.charAt(j) >= '0' && b.charAt(j) <= '9') ;
+			} else if (ca == cb) {
+				i++;
+				j++;
+			} else
+				return false;
+		}
+		return i == la && j == lb;
+	}
+}
@@ -14,12 +14,23 @@ public class StreamCopier implements Runnable, Closeable {
 	private static final Logger log = Logger.getLogger(StreamCopier.class.getName());
 	private final InputStream in;
 	private final OutputStream out;
+	private final CommandQueue queue;
 	private List<GameListener> listeners = new ArrayList<>();
 	private Thread thread;
 
 	public StreamCopier(InputStream in, OutputStream out) throws IOException {
 		this.in = in;
 		this.out = out;
+		this.queue = null;
+	}
+
+	/**
+	 * Creates a copier that submits each line to a command queue, with the console priority
+	 */
+	public StreamCopier(InputStream in, CommandQueue queue) {
+		this.in = in;
+		this.out = null;
+		this.queue = queue;
 	}
 
 	public void addConsoleListener(GameListener listener) {
@@ -30,13 +41,15 @@ public class StreamCopier implements Runnable, Closeable {
 	public void run() {
 		String line;
 		BufferedReader in = new BufferedReader(new InputStreamReader(this.in));
-		PrintStream out = new PrintStream(this.out);
+		PrintStream out = this.out != null ? new PrintStream(this.out) : null;
 		try {
 			while ((line = in.readLine()) != null) {
 				boolean copy = true;
 				for (GameListener listener : listeners)
 					copy &= listener.onConsoleInput(line);
-				if (copy)
+				if (copy && queue != null)
+					queue.submit(CommandQueue.Priority.CONSOLE, line);
+				else if (copy)
 					synchronized (StreamCopier.this) {
 						out.println(line);
 					}
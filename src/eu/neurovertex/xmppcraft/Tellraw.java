@@ -0,0 +1,106 @@
+package eu.neurovertex.xmppcraft;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds tellraw commands, which show a JSON text component in the chat. Unlike 'say', a whole multi-line message is a
+ * single command, and text components are never parsed for selectors, so '@' needs no escaping. Formatting codes (§
+ * and the character after it) are stripped, so that XMPP users can't inject colours or obfuscated text.
+ * <p>
+ * Text is escaped in a single pass into a per-thread buffer, without regular expressions or intermediate strings.
+ *
+ * @author Neurovertex
+ *         Date: 17/10/2026, 04:49
+ */
+public class Tellraw {
+	private static final String PREFIX = "tellraw @a ";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	/**
+	 * Longest command the merger produces
+	 */
+	private static final int MAX_LENGTH = 32000;
+	private static final ThreadLocal<StringBuilder> buffer = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+	/**
+	 * Merges tellraw commands that waited for the rate limit into one, with a line break between each message
+	 */
+	public static final CommandQueue.Merger merger = new CommandQueue.Merger() {
+		@Override
+		public List<String> merge(List<String> commands) {
+			List<String> merged = new ArrayList<>();
+			StringBuilder sb = null;
+			for (String command : commands) {
+				if (sb != null && (!command.startsWith(PREFIX) || sb.length() + command.length() > MAX_LENGTH)) {
+					merged.add(sb.append(']').toString());
+					sb = null;
+				}
+				if (!command.startsWith(PREFIX))
+					merged.add(command);
+				else if (sb == null)
+					sb = new StringBuilder(PREFIX).append("[\"\",").append(command, PREFIX.length(), command.length());
+				else
+					sb.append(",\"\\n\",").append(command, PREFIX.length(), command.length());
+			}
+			if (sb != null)
+				merged.add(sb.append(']').toString());
+			return merged;
+		}
+	};
+
+	private Tellraw() {
+	}
+
+	/**
+	 * Builds a command showing a message to every player
+	 * @param message    Message, possibly on several lines
+	 * @return	The command
+	 */
+	public static String command(CharSequence message) {
+		StringBuilder sb = buffer.get();
+		sb.setLength(0);
+		sb.append(PREFIX).append("{\"text\":\"");
+		escape(message, sb);
+		String command = sb.append("\"}").toString();
+		if (sb.capacity() > 16384) // Don't keep a huge buffer around because of one long message
+			buffer.remove();
+		return command;
+	}
+
+	/**
+	 * Appends text as the content of a JSON string, without formatting codes
+	 * @param text    Text to escape
+	 * @param sb      Where to append it
+	 */
+	public static void escape(CharSequence text, StringBuilder sb) {
+		for (int i = 0, len = text.length(); i < len; i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '§':
+					i++; // Skips the formatting code
+					break;
+				case '"':
+				case '\\':
+					sb.append('\\').append(c);
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				default:
+					if (c < 0x20)
+						sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+					else
+						sb.append(c);
+			}
+		}
+	}
+}
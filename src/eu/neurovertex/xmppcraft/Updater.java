@@ -16,9 +16,16 @@ public class Updater {
 	private String version;
 	private URL baseURL;
 	/**
-	 * Classes that should not be updated (cross-update interface(s))
+	 * Classes that should not be updated (cross-update interface(s)), along with their nested classes. The command queue
+	 * is handed over from one version to the next, since console lines read by the previous version still go through
+	 * it, and so are the latency histograms it records to.
 	 */
-	private static final List<String> globalBlacklist = new ArrayList<>(); /*Arrays.asList(Startable.class.getName())// for future update*/
+	private static final List<String> globalBlacklist = Arrays.asList(CommandQueue.class.getName(), Latency.class.getName());
+
+	private static boolean isGloballyBlacklisted(String name) {
+		int nested = name.indexOf('$');
+		return globalBlacklist.contains(nested < 0 ? name : name.substring(0, nested));
+	}
 
 	/**
 	 * Creates a new Updater. Current version is automatically retreived from the manifest loaded with the classes.
@@ -156,7 +163,7 @@ public class Updater {
 				try {
 					// first try to use the URLClassLoader findClass
 					// Ignore blacklist/non-whitelist. Do not reload classes from other packages.
-					if ((blacklist.contains(name) ^ whitelist) || globalBlacklist.contains(name) || !name.startsWith(Main.class.getPackage().getName()))
+					if ((blacklist.contains(name) ^ whitelist) || isGloballyBlacklisted(name) || !name.startsWith(Main.class.getPackage().getName()))
 						throw new ClassNotFoundException();
 					return super.findClass(name);
 				} catch (ClassNotFoundException e) {
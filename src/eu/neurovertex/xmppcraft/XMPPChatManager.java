@@ -97,6 +97,8 @@ public class XMPPChatManager implements ConnectionListener, Closeable {
 
 	@Override
 	public void close() {
+		if (bot != null)
+			bot.close();
 		try {
 			connection.disconnect();
 		} catch (SmackException.NotConnectedException ignore) {}